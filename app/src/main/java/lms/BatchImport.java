@@ -0,0 +1,311 @@
+package lms;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Streams CSV or JSON-lines records into the catalog, reporting bad lines without stopping the import
+final class BatchImport {
+    enum Format {
+        CSV, JSONL;
+
+        // Guess from the file name, anything that isn't JSON lines is read as CSV
+        static Format of(String filename) {
+            String name = filename.toLowerCase(Locale.ROOT);
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+    private static final int TITLE = 0, AUTHOR = 1, YEAR = 2, ISBN = 3, TYPE = 4, GENRE = 5, FIELDS = 6;
+    private static final int[] DEFAULT_COLUMNS = {TITLE, AUTHOR, YEAR, ISBN, TYPE, GENRE};   // CSV without a header
+    private static final int BYTES_PER_RECORD = 64;                        // Rough record size for presizing the catalog
+
+    private final Catalog catalog;
+    private final PrintStream errors;
+    private final String[] fields = new String[FIELDS];                    // Reused for every record
+    private final List<String> values = new ArrayList<>();
+    private final StringBuilder token = new StringBuilder();
+    private int added;
+    private int failed;
+
+    BatchImport(Catalog catalog, PrintStream errors) {
+        this.catalog = catalog;
+        this.errors = errors;
+    }
+
+    // Reserve catalog slots for an input of the given size in bytes
+    void expect(long bytes) {
+        catalog.ensureCapacity((int) Math.min(Integer.MAX_VALUE, bytes / BYTES_PER_RECORD));
+    }
+
+    // Adds every valid record from in, returns the number of books added
+    int run(BufferedReader in, String source, Format format) throws IOException {
+        int[] columns = DEFAULT_COLUMNS;
+        int before = added;
+        int lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                Arrays.fill(fields, null);
+                if (format == Format.JSONL) {
+                    parseJson(line);
+                } else {
+                    parseCsv(line);
+                    if (lineNumber == 1 && isHeader()) {
+                        columns = header();
+                        continue;
+                    }
+                    for (int i = 0; i < values.size() && i < columns.length; i++) {
+                        if (columns[i] >= 0) {
+                            fields[columns[i]] = values.get(i);
+                        }
+                    }
+                }
+                catalog.add(toBook());
+                added++;
+            } catch (ValidationException | IllegalArgumentException e) {
+                failed++;
+                errors.println(source + ":" + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return added - before;
+    }
+
+    // Validates a single JSON object outside of an import (server request bodies)
+    static Book parseBook(String json) throws ValidationException {
+        BatchImport parser = new BatchImport(null, null);
+        parser.parseJson(json);
+        return parser.toBook();
+    }
+
+    int added() {
+        return added;
+    }
+
+    int failed() {
+        return failed;
+    }
+
+    // Same rules as the Add Book menu, then the Book setters themselves; nothing is allocated for a valid record
+    private Book toBook() throws ValidationException {
+        String title = required(TITLE, "Title");
+        String authorName = required(AUTHOR, "Author");
+        if (!Validation.isAuthorName(authorName)) {
+            throw new ValidationException("Author cannot contain special characters or numbers.");
+        }
+        int year;
+        try {
+            year = Integer.parseInt(required(YEAR, "Publication Year"));
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Publication Year must be a number");
+        }
+        String isbn = required(ISBN, "ISBN");
+        Validation.checkNewISBN(isbn);
+
+        String type = fields[TYPE] == null ? "" : fields[TYPE].trim();
+        if (type.equalsIgnoreCase("fiction")) {
+            String bookGenre = required(GENRE, "Genre");
+            if (!Validation.isGenreName(bookGenre)) {
+                throw new ValidationException("Genre cannot contain special characters");
+            }
+            return new FictionBook(title, authorName, year, isbn, bookGenre);
+        } else if (type.equalsIgnoreCase("textbook") || type.equalsIgnoreCase("textbooks")) {
+            String bookSubject = required(GENRE, "Subject");
+            if (!Validation.isSubjectName(bookSubject)) {
+                throw new ValidationException("Subject cannot contain special characters or numbers");
+            }
+            return new Textbook(title, authorName, year, isbn, bookSubject);
+        } else if (type.isEmpty() || type.equalsIgnoreCase("book") || type.equalsIgnoreCase("non-fiction")
+                || type.equalsIgnoreCase("nonfiction")) {
+            return new Book(title, authorName, year, isbn);
+        }
+        throw new ValidationException("Unknown book type \"" + type + "\"");
+    }
+
+    private String required(int field, String name) throws ValidationException {
+        String value = fields[field] == null ? "" : fields[field].trim();
+        if (value.isEmpty()) {
+            throw new ValidationException(name + " cannot be empty");
+        }
+        return value;
+    }
+
+    // A first row naming both title and isbn is taken as a header
+    private boolean isHeader() {
+        boolean title = false, isbn = false;
+        for (String value : values) {
+            int field = field(value);
+            title |= field == TITLE;
+            isbn |= field == ISBN;
+        }
+        return title && isbn;
+    }
+
+    private int[] header() {
+        int[] columns = new int[values.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = field(values.get(i));                              // Unknown columns are ignored
+        }
+        return columns;
+    }
+
+    private static int field(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "title": return TITLE;
+            case "author": return AUTHOR;
+            case "year": case "publication year": return YEAR;
+            case "isbn": return ISBN;
+            case "type": return TYPE;
+            case "genre": case "subject": return GENRE;
+            default: return -1;
+        }
+    }
+
+    // RFC 4180 style: comma separated, fields may be quoted with "" as an escaped quote
+    private void parseCsv(String line) throws ValidationException {
+        values.clear();
+        int i = 0, n = line.length();
+        while (true) {
+            token.setLength(0);
+            if (i < n && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= n) {
+                        throw new ValidationException("Unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < n && line.charAt(i) == '"') {
+                            token.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        token.append(c);
+                    }
+                }
+                if (i < n && line.charAt(i) != ',') {
+                    throw new ValidationException("Unexpected character after quoted field");
+                }
+                values.add(token.toString());
+            } else {
+                int end = line.indexOf(',', i);
+                values.add(line.substring(i, end < 0 ? n : end));
+                i = end < 0 ? n : end;
+            }
+            if (i >= n) {
+                return;
+            }
+            i++;                                                           // Skip the comma
+        }
+    }
+
+    // One flat JSON object per line, string or number values, unknown keys ignored
+    private void parseJson(String line) throws ValidationException {
+        int[] at = {skip(line, 0)};
+        expect(line, at, '{');
+        at[0] = skip(line, at[0]);
+        boolean empty = at[0] < line.length() && line.charAt(at[0]) == '}';
+        while (!empty) {
+            at[0] = skip(line, at[0]);
+            int field = field(jsonString(line, at));
+            at[0] = skip(line, at[0]);
+            expect(line, at, ':');
+            at[0] = skip(line, at[0]);
+            String value = jsonValue(line, at);
+            if (field >= 0) {
+                fields[field] = value;
+            }
+            at[0] = skip(line, at[0]);
+            if (at[0] < line.length() && line.charAt(at[0]) == ',') {
+                at[0]++;
+                continue;
+            }
+            break;
+        }
+        expect(line, at, '}');
+        if (skip(line, at[0]) != line.length()) {
+            throw new ValidationException("Malformed JSON: trailing characters after object");
+        }
+    }
+
+    private String jsonValue(String line, int[] at) throws ValidationException {
+        if (at[0] < line.length() && line.charAt(at[0]) == '"') {
+            return jsonString(line, at);
+        }
+        int start = at[0];
+        while (at[0] < line.length() && ",}] \t".indexOf(line.charAt(at[0])) < 0) {
+            at[0]++;
+        }
+        String literal = line.substring(start, at[0]);
+        if (literal.isEmpty()) {
+            throw new ValidationException("Malformed JSON: missing value at column " + (start + 1));
+        }
+        return literal.equals("null") ? null : literal;
+    }
+
+    private String jsonString(String line, int[] at) throws ValidationException {
+        expect(line, at, '"');
+        token.setLength(0);
+        int n = line.length();
+        while (true) {
+            if (at[0] >= n) {
+                throw new ValidationException("Malformed JSON: unterminated string");
+            }
+            char c = line.charAt(at[0]++);
+            if (c == '"') {
+                return token.toString();
+            }
+            if (c != '\\') {
+                token.append(c);
+                continue;
+            }
+            if (at[0] >= n) {
+                throw new ValidationException("Malformed JSON: unterminated string");
+            }
+            char escape = line.charAt(at[0]++);
+            switch (escape) {
+                case 'b': token.append('\b'); break;
+                case 'f': token.append('\f'); break;
+                case 'n': token.append('\n'); break;
+                case 'r': token.append('\r'); break;
+                case 't': token.append('\t'); break;
+                case 'u':
+                    if (at[0] + 4 > n) {
+                        throw new ValidationException("Malformed JSON: bad unicode escape");
+                    }
+                    try {
+                        token.append((char) Integer.parseInt(line.substring(at[0], at[0] + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new ValidationException("Malformed JSON: bad unicode escape");
+                    }
+                    at[0] += 4;
+                    break;
+                default: token.append(escape);                              // \" \\ \/
+            }
+        }
+    }
+
+    private static void expect(String line, int[] at, char c) throws ValidationException {
+        if (at[0] >= line.length() || line.charAt(at[0]) != c) {
+            throw new ValidationException("Malformed JSON: expected '" + c + "' at column " + (at[0] + 1));
+        }
+        at[0]++;
+    }
+
+    private static int skip(String line, int i) {
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
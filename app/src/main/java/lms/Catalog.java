@@ -0,0 +1,653 @@
+package lms;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Catalog store: books are kept in id slots behind a primary ISBN hash index.
+// Slots below baseCount can come from a mapped save file and are only decoded when read.
+// Added books are kept as objects, or packed into a ColumnarStore and likewise decoded when read.
+// Slots are append-only and removals are stamped rather than cleared, so snapshot() is O(1). Once removed slots
+// outnumber the books, compact() renumbers the added books into fresh arrays that earlier snapshots do not share.
+// Mutations and snapshot() synchronize on the catalog, so another thread may take a snapshot at any time.
+class Catalog implements Iterable<Book> {
+    private static final Metrics.Timer ADD_TIME = Metrics.timer("catalog.add");
+    private static final Metrics.Counter ADD_REJECTED = Metrics.counter("catalog.add.rejected");
+    private static final Metrics.Timer REMOVE_TIME = Metrics.timer("catalog.remove");
+    private static final Metrics.Timer UPDATE_TIME = Metrics.timer("catalog.update");
+    private static final Metrics.Timer SEARCH_TIME = Metrics.timer("catalog.search");
+    private static final Metrics.Timer FILTER_TIME = Metrics.timer("catalog.filter");
+    private static final Metrics.Timer SORT_TIME = Metrics.timer("catalog.sort");
+    private static final Metrics.Timer QUERY_TIME = Metrics.timer("catalog.query");
+    private static final Metrics.Timer SELECT_TIME = Metrics.timer("catalog.select");
+    private static final Metrics.Timer INDEX_TIME = Metrics.timer("catalog.buildIndexes");
+    private static final Metrics.Timer COMPACT_TIME = Metrics.timer("catalog.compact");
+    private static final int COMPACT_MIN_SLOTS = 1 << 12;                 // Removed slots worth a compaction at the least
+    private final IsbnIndex isbnIndex = new IsbnIndex();                   // Normalized ISBN -> slot id
+    private final MappedCatalog base;                                      // Lazily decoded save file records, or null
+    private final int baseCount;
+    private Removals removals = new Removals();
+    private boolean indexed;                                               // ISBN index covers the base records
+    private Book[] slots;                                                  // Slot id - baseCount -> book (kept after removal)
+    private ColumnarStore columns;                                         // Replaces slots when columnar, else null
+    private int nextId;
+    private int size;
+    private int removed;                                                   // Removals so far, the latest removal stamp
+    private int reclaimable;                                               // Removed slots from baseCount up, see compact()
+    private int compactions;                                               // Slot ids only hold between two compactions
+    private final List<CatalogListener> listeners = new ArrayList<>();
+    private final SearchIndex searchIndex = new SearchIndex(this);
+    private final SortIndex sortIndex = new SortIndex(this);
+    private final FacetIndex facetIndex = new FacetIndex(this);
+    private final YearIndex yearIndex = new YearIndex(this);
+    private final QueryPlanner planner = new QueryPlanner(this, searchIndex, facetIndex, yearIndex);
+    private final QueryCache queryCache = QueryCache.fromProperties();
+    private final List<CatalogListener> indexes = List.of(searchIndex, sortIndex, facetIndex, yearIndex, queryCache);
+
+    public Catalog() {
+        this(null);
+    }
+
+    public Catalog(MappedCatalog base) {
+        this(base, false);
+    }
+
+    public Catalog(MappedCatalog base, boolean columnar) {
+        this.base = base;
+        this.columns = columnar ? new ColumnarStore() : null;
+        this.slots = columnar ? null : new Book[16];
+        this.baseCount = base == null ? 0 : base.size();
+        this.nextId = baseCount;
+        this.size = baseCount;
+        this.indexed = base == null;
+        for (CatalogListener index : indexes) {
+            addListener(index);
+        }
+    }
+
+    // Registers an index that is kept in step with every add/remove
+    public void addListener(CatalogListener listener) {
+        listeners.add(listener);
+    }
+
+    // Pre-sizes the slot table ahead of a bulk load
+    public void ensureCapacity(int expected) {
+        isbnIndex.ensureCapacity(expected);
+        if (columns != null) {
+            columns.ensureCapacity(expected);
+            return;
+        }
+        int used = nextId - baseCount;
+        if (expected > slots.length - used) {
+            slots = Arrays.copyOf(slots, used + expected);
+        }
+    }
+
+    // Adds a book, rejecting duplicate ISBNs
+    public synchronized void add(Book book) throws ValidationException {
+        long start = Metrics.start();
+        try {
+            insert(book);
+        } catch (ValidationException e) {
+            ADD_REJECTED.increment();
+            throw e;
+        } finally {
+            ADD_TIME.record(start);
+        }
+    }
+
+    private void insert(Book book) throws ValidationException {
+        ensureIndexed();
+        String key = normalizeISBN(book.getISBN());
+        if (isbnIndex.containsKey(key)) {
+            throw new ValidationException("A book with ISBN " + book.getISBN() + " already exists");
+        }
+        int id = append(key, book);
+        for (CatalogListener listener : listeners) {
+            listener.bookAdded(id, book);
+        }
+    }
+
+    // Stores the book in the next slot and points the key at it, returns its id
+    private int append(String key, Book book) throws ValidationException {
+        int id = nextId;
+        if (columns != null) {
+            columns.append(book);                                          // Row id - baseCount
+        } else {
+            if (id - baseCount == slots.length) {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+            slots[id - baseCount] = book;
+        }
+        nextId++;
+        isbnIndex.put(key, id);
+        size++;
+        return id;
+    }
+
+    // Removes the book with the given ISBN, returns null if there is none
+    public synchronized Book remove(String isbn) {
+        long start = Metrics.start();
+        try {
+            ensureIndexed();
+            int id = isbnIndex.remove(normalizeISBN(isbn));
+            if (id < 0) {
+                return null;
+            }
+            Book book = unlink(id);
+            for (CatalogListener listener : listeners) {
+                listener.bookRemoved(id, book);
+            }
+            compactIfSparse();
+            return book;
+        } finally {
+            REMOVE_TIME.record(start);
+        }
+    }
+
+    // Replaces the book with the same ISBN by this one, in a new slot, and returns the old book
+    public synchronized Book update(Book book) throws ValidationException {
+        long start = Metrics.start();
+        try {
+            ensureIndexed();
+            String key = normalizeISBN(book.getISBN());
+            int oldId = isbnIndex.get(key);
+            if (oldId < 0) {
+                throw new ValidationException("No book found with ISBN " + book.getISBN());
+            }
+            int id = append(key, book);                                    // Nothing changes if the book is rejected
+            Book old = unlink(oldId);
+            for (CatalogListener listener : listeners) {
+                listener.bookUpdated(oldId, old, id, book);
+            }
+            compactIfSparse();
+            return old;
+        } finally {
+            UPDATE_TIME.record(start);
+        }
+    }
+
+    // Marks a slot no longer in the ISBN index as removed, returns its book
+    private Book unlink(int id) {
+        Book book = get(id);
+        removals.stamp(id, ++removed);                                     // Older snapshots still see the book
+        size--;
+        if (id >= baseCount) {
+            reclaimable++;
+        }
+        return book;
+    }
+
+    // Compacts once the removed slots outnumber the books, so the work is paid for by the removals behind it
+    private void compactIfSparse() {
+        if (reclaimable >= COMPACT_MIN_SLOTS && reclaimable > size) {
+            compact();
+        }
+    }
+
+    // Moves the added books down over the removed slots, keeping their order, and tells the listeners which ids
+    // changed. Mapped records below baseCount stay where they are. The slots, columns and removal stamps go into
+    // new arrays, so snapshots and views taken earlier keep reading the old ones until they are dropped.
+    synchronized void compact() {
+        long start = Metrics.start();
+        ensureIndexed();
+        int from = baseCount;
+        while (from < nextId && removals.stamp(from) == 0) {
+            from++;
+        }
+        if (from == nextId) {
+            return;
+        }
+        int[] renumbered = new int[nextId - from];                         // Old id - from -> new id, -1 if removed
+        int next = from;
+        for (int id = from; id < nextId; id++) {
+            renumbered[id - from] = removals.stamp(id) == 0 ? next++ : -1;
+        }
+        int first = from - baseCount;                                      // Rows before this one keep their place
+        if (columns != null) {
+            columns = columns.retain(row -> row < first || renumbered[row - first] >= 0);
+        } else {
+            Book[] packed = new Book[Math.max(16, next - baseCount)];
+            System.arraycopy(slots, 0, packed, 0, first);
+            for (int id = from; id < nextId; id++) {
+                if (renumbered[id - from] >= 0) {
+                    packed[renumbered[id - from] - baseCount] = slots[id - baseCount];
+                }
+            }
+            slots = packed;
+        }
+        removals = removals.below(from);
+        isbnIndex.renumber(from, renumbered);
+        nextId = next;
+        reclaimable = 0;
+        compactions++;
+        for (CatalogListener listener : listeners) {
+            listener.slotsCompacted(from);
+        }
+        COMPACT_TIME.record(start);
+    }
+
+    // Builds every lazily created index now; afterwards reads no longer modify the catalog (see SharedCatalog)
+    public void buildIndexes() {
+        long start = Metrics.start();
+        ensureIndexed();
+        searchIndex.ensureBuilt();
+        sortIndex.ensureBuilt();
+        facetIndex.ensureBuilt();
+        yearIndex.ensureBuilt();
+        INDEX_TIME.record(start);
+    }
+
+    // Returns the book with the given ISBN, or null
+    public Book find(String isbn) {
+        ensureIndexed();
+        int id = isbnIndex.get(normalizeISBN(isbn));
+        return id < 0 ? null : get(id);
+    }
+
+    // Slot id of the book with the given ISBN, or -1
+    int idOf(String isbn) {
+        ensureIndexed();
+        return isbnIndex.get(normalizeISBN(isbn));
+    }
+
+    // Returns the book in the given slot, or null if it was removed
+    public Book get(int id) {
+        if (!isLive(id)) {
+            return null;
+        }
+        return id < baseCount ? base.read(id) : columns != null ? columns.columns().read(id - baseCount) : slots[id - baseCount];
+    }
+
+    // Single fields by slot id, for scans over many books: unlike get, no Book is built or validated, and a
+    // columnar or mapped slot decodes only the field asked for. A removed slot still answers until the next
+    // compaction, as views of older snapshots need.
+    String title(int id) {
+        return id < baseCount ? base.title(id) : columns != null ? columns.columns().title(id - baseCount) : slots[id - baseCount].getTitle();
+    }
+
+    String author(int id) {
+        return id < baseCount ? base.author(id) : columns != null ? columns.columns().author(id - baseCount) : slots[id - baseCount].getAuthor();
+    }
+
+    int year(int id) {
+        return id < baseCount ? base.year(id) : columns != null ? columns.columns().year(id - baseCount) : slots[id - baseCount].getYear();
+    }
+
+    String isbn(int id) {
+        return id < baseCount ? base.readISBN(id) : columns != null ? columns.columns().isbn(id - baseCount) : slots[id - baseCount].getISBN();
+    }
+
+    String genre(int id) {
+        return id < baseCount ? base.genre(id) : columns != null ? columns.columns().genre(id - baseCount) : slots[id - baseCount].getGenre();
+    }
+
+    // Upper bound (exclusive) of slot ids handed out so far
+    public int slotCount() {
+        return nextId;
+    }
+
+    public boolean isLive(int id) {
+        return id >= 0 && id < nextId && removals.stamp(id) == 0;
+    }
+
+    // The catalog as it is now, unaffected by later adds and removes
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(base, baseCount, slots, columns == null ? null : columns.columns(), removals, nextId, removed, size,
+                compactions);
+    }
+
+    // Whether the list is a view whose slot ids still name the same books here, i.e. one taken since the last
+    // compaction; any other list has to be handled by its books
+    boolean isCurrent(List<Book> list) {
+        return list instanceof View && ((View) list).snapshot.compactions == compactions;
+    }
+
+    // Lightweight list over the live slot ids; books are fetched (and decoded, for mapped records) on access
+    public List<Book> view() {
+        int[] ids = ParallelScan.select(0, nextId, this::isLive);
+        return view(ids, ids.length);
+    }
+
+    // View over the given slot ids, in the given order, resolved against a snapshot taken now
+    List<Book> view(int[] ids, int size) {
+        return new View(snapshot(), ids, size);
+    }
+
+    // Returns the list's books in the given order, walking the pre-sorted index where that is cheaper than sorting
+    public List<Book> sorted(SortOrder order, List<Book> list) {
+        long start = Metrics.start();
+        try {
+            return sortIndex.sorted(order, list);
+        } finally {
+            SORT_TIME.record(start);
+        }
+    }
+
+    // Books of the list matching the filter criteria (see BookType.matchesFilter), in the list's order
+    public List<Book> filter(String criteria, List<Book> list) {
+        long start = Metrics.start();
+        try {
+            IdBitmap matches = facetIndex.matching(criteria);
+            if (isCurrent(list)) {
+                View view = (View) list;
+                // Intersect the view with the facet bitmap
+                int[] ids = ParallelScan.range(0, view.size()).map(view::id).filter(matches::contains).toArray();
+                return view(ids, ids.length);
+            }
+            return ParallelScan.stream(list).filter(book -> book.matchesFilter(criteria)).collect(Collectors.toList());
+        } finally {
+            FILTER_TIME.record(start);
+        }
+    }
+
+    // Ranked title/author search backed by the token index
+    public List<Book> search(String term) {
+        return searchResult(term).books;
+    }
+
+    private SearchIndex.Result searchResult(String term) {
+        long start = Metrics.start();
+        try {
+            return searchIndex.find(term);
+        } finally {
+            SEARCH_TIME.record(start);
+        }
+    }
+
+    // How select would answer the expression, see QueryPlanner; the order is only shown in the explain output
+    public QueryPlanner.Plan plan(Expression expression, SortOrder order) {
+        return planner.plan(expression, order);
+    }
+
+    // Books matching every condition of the expression, in insertion order, found the cheapest way the indexes allow
+    public List<Book> select(Expression expression) {
+        long start = Metrics.start();
+        try {
+            int[] ids = planner.plan(expression, null).execute();
+            return view(ids, ids.length);
+        } finally {
+            SELECT_TIME.record(start);
+        }
+    }
+
+    // Search or select, then filter, then sort (see Query), answered from the result cache when it can be
+    public List<Book> query(Query query) {
+        long start = Metrics.start();
+        try {
+            int[] cached = queryCache.get(query);
+            if (cached != null) {
+                return view(cached, cached.length);
+            }
+            List<Book> list;
+            boolean exact = true;                                          // Fuzzy fallback results are not, see QueryCache
+            if (query.where != null) {
+                list = select(query.where);
+            } else if (query.term.isEmpty()) {
+                list = view();
+            } else {
+                SearchIndex.Result found = searchResult(query.term);
+                list = found.books;
+                exact = !found.fuzzy;
+            }
+            for (String criteria : query.filters()) {
+                list = filter(criteria, list);
+            }
+            if (query.order != null) {
+                list = sorted(query.order, list);
+            }
+            queryCache.put(query, ((View) list).ids(), exact);           // Views all the way down
+            return list;
+        } finally {
+            QUERY_TIME.record(start);
+        }
+    }
+
+    // Hit/miss statistics of the query result cache
+    public QueryCache queryCache() {
+        return queryCache;
+    }
+
+    // Distinct words in the search index, 0 until it is built
+    public int indexedTerms() {
+        return searchIndex.terms();
+    }
+
+    // Type-ahead completions of the term's last word, see SearchIndex.suggest
+    public List<String> suggest(String term, int limit) {
+        return searchIndex.suggest(term, limit);
+    }
+
+    public boolean contains(String isbn) {
+        ensureIndexed();
+        return isbnIndex.containsKey(normalizeISBN(isbn));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Iterates books in insertion order, skipping removed slots; later changes do not affect the iteration
+    @Override
+    public Iterator<Book> iterator() {
+        return snapshot().iterator();
+    }
+
+    // Fills the ISBN index from the mapped records the first time it is needed, decoding only their ISBNs
+    private void ensureIndexed() {
+        if (indexed) {
+            return;
+        }
+        for (int id = 0; id < baseCount; id++) {
+            if (removals.stamp(id) != 0) {
+                continue;
+            }
+            String key = normalizeISBN(base.readISBN(id));
+            if (isbnIndex.containsKey(key)) {
+                dropDuplicate(id);
+            } else {
+                isbnIndex.put(key, id);
+            }
+        }
+        indexed = true;
+    }
+
+    // A mapped record repeating an earlier ISBN is removed, as an import would have rejected it. Our own indexes
+    // hear of it as a removal and the save file's store so the next save leaves it out; the journal and other
+    // listeners never saw it as a book of its own.
+    private void dropDuplicate(int id) {
+        Book book = unlink(id);
+        System.err.println("Skipping duplicate ISBN " + book.getISBN() + " in the save file");
+        for (CatalogListener index : indexes) {
+            index.bookRemoved(id, book);
+        }
+        for (CatalogListener listener : listeners) {
+            listener.recordDropped(id);
+        }
+    }
+
+    // Strips hyphens/spaces and maps a valid ISBN-10 onto its ISBN-13 form so both spellings share one key. An
+    // ISBN-10 with a wrong check digit keeps its own key, or it would collide with the valid one.
+    static String normalizeISBN(String isbn) {
+        StringBuilder key = new StringBuilder(13);
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            key.append(c == 'x' ? 'X' : c);
+        }
+        if (isISBN10(key) && Validation.isValidISBN(key)) {
+            key.setLength(9);
+            key.insert(0, "978");
+            key.append(Validation.isbn13CheckDigit(key));
+        }
+        return key.toString();
+    }
+
+    private static boolean isISBN10(CharSequence key) {
+        if (key.length() != 10) {
+            return false;
+        }
+        for (int i = 0; i < 9; i++) {
+            if (key.charAt(i) < '0' || key.charAt(i) > '9') {
+                return false;
+            }
+        }
+        char check = key.charAt(9);
+        return (check >= '0' && check <= '9') || check == 'X';
+    }
+
+    // Random-access list of slot ids resolved against a snapshot on each get
+    static class View extends AbstractList<Book> implements RandomAccess {
+        private final Snapshot snapshot;
+        private final int[] ids;
+        private final int size;
+
+        View(Snapshot snapshot, int[] ids, int size) {
+            this.snapshot = snapshot;
+            this.ids = ids;
+            this.size = size;
+        }
+
+        @Override
+        public Book get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+            }
+            return snapshot.get(ids[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        // Slot id behind the given position
+        int id(int index) {
+            return ids[index];
+        }
+
+        // Slot ids in list order; shared, never modified
+        int[] ids() {
+            return size == ids.length ? ids : Arrays.copyOf(ids, size);
+        }
+    }
+
+    // Catalog contents at one point in time. Adds made later land at or beyond limit and removals made later
+    // carry a newer stamp than removed, so neither shows; the arrays are shared with the catalog, not copied.
+    static final class Snapshot implements Iterable<Book> {
+        private final MappedCatalog base;
+        private final int baseCount;
+        private final Book[] slots;
+        private final ColumnarStore.Columns columns;                       // Set instead of slots for a columnar catalog
+        private final Removals removals;
+        private final int limit;
+        private final int removed;
+        private final int size;
+        private final int compactions;
+
+        private Snapshot(MappedCatalog base, int baseCount, Book[] slots, ColumnarStore.Columns columns, Removals removals,
+                int limit, int removed, int size, int compactions) {
+            this.base = base;
+            this.baseCount = baseCount;
+            this.slots = slots;
+            this.columns = columns;
+            this.removals = removals;
+            this.limit = limit;
+            this.removed = removed;
+            this.size = size;
+            this.compactions = compactions;
+        }
+
+        public Book get(int id) {
+            if (!isLive(id)) {
+                return null;
+            }
+            return id < baseCount ? base.read(id) : columns != null ? columns.read(id - baseCount) : slots[id - baseCount];
+        }
+
+        public boolean isLive(int id) {
+            if (id < 0 || id >= limit) {
+                return false;
+            }
+            int stamp = removals.stamp(id);
+            return stamp == 0 || stamp > removed;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<Book> iterator() {
+            return new Iterator<Book>() {
+                private int cursor = advance(0);
+
+                private int advance(int from) {
+                    while (from < limit && !isLive(from)) {
+                        from++;
+                    }
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return cursor < limit;
+                }
+
+                @Override
+                public Book next() {
+                    if (cursor >= limit) {
+                        throw new NoSuchElementException();
+                    }
+                    Book book = get(cursor);
+                    cursor = advance(cursor + 1);
+                    return book;
+                }
+            };
+        }
+    }
+
+    // Removal stamp per slot id (0 = never removed) in pages allocated on first use. Stamps are only ever
+    // written once, and a grown page table keeps the same pages, so snapshots can read it as it changes.
+    private static final class Removals {
+        private static final int PAGE_BITS = 12;
+        private static final int PAGE_SIZE = 1 << PAGE_BITS;
+        private int[][] pages = new int[0][];
+
+        int stamp(int id) {
+            int[][] table = pages;
+            int page = id >>> PAGE_BITS;
+            return page < table.length && table[page] != null ? table[page][id & (PAGE_SIZE - 1)] : 0;
+        }
+
+        void stamp(int id, int stamp) {
+            int page = id >>> PAGE_BITS;
+            if (page >= pages.length) {
+                pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+            }
+            if (pages[page] == null) {
+                pages[page] = new int[PAGE_SIZE];
+            }
+            pages[page][id & (PAGE_SIZE - 1)] = stamp;
+        }
+
+        // A table of the stamps of ids below end only. Pages wholly below end are shared, which older snapshots
+        // can live with: the stamps written to them from now on are newer than any those snapshots go by.
+        Removals below(int end) {
+            Removals copy = new Removals();
+            int page = end >>> PAGE_BITS;
+            copy.pages = Arrays.copyOf(pages, Math.min(pages.length, page + 1));
+            if (page < copy.pages.length && copy.pages[page] != null) {
+                int[] partial = new int[PAGE_SIZE];
+                System.arraycopy(pages[page], 0, partial, 0, end & (PAGE_SIZE - 1));
+                copy.pages[page] = partial;
+            }
+            return copy;
+        }
+    }
+}
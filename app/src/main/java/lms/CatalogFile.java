@@ -0,0 +1,572 @@
+package lms;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Versioned binary save file: header followed by length-prefixed book records, streamed through NIO channels
+//
+//   header : magic "LMSC" (int) | version (short) | flags (short) | record count (int)
+//   record : type tag (byte) | body length (int) | year (int) | title | author | isbn [| genre]
+//   string : byte length (unsigned short) | UTF-8 bytes, so at most Validation.MAX_FIELD_BYTES
+//   footer : record offsets (long per record) | offset table position (long) | magic "LMSI" (int)   (version 2+)
+//
+// Version 3 files with the DEFLATE flag hold the records in compressed blocks instead, and have no footer:
+//
+//   block : record count (int) | raw length (int) | compressed length (int) | CRC32 of raw bytes (int) | Deflate data
+//
+// Blocks hold whole records, so each one can be checked and inflated on its own and a reader inflates several
+// at once. Only uncompressed files can be memory-mapped.
+class CatalogFile {
+    static final int MAGIC = 0x4C4D5343;                                   // "LMSC"
+    static final int INDEX_MAGIC = 0x4C4D5349;                             // "LMSI"
+    static final short VERSION = 2;
+    static final short BLOCK_VERSION = 3;
+    static final short DEFLATE = 1;                                        // Header flag
+    static final int HEADER_SIZE = 12;
+    static final int TRAILER_SIZE = 12;
+    static final byte BOOK = 1;                                            // Record type tags
+    static final byte FICTION = 2;
+    static final byte TEXTBOOK = 3;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final short LEGACY_MAGIC = (short) 0xACED;              // ObjectOutputStream stream header
+    private static final int BLOCK_SIZE = 1 << 16;                         // Raw bytes per compressed block
+    private static final int BLOCK_HEADER_SIZE = 16;
+    private static final int READ_AHEAD = Runtime.getRuntime().availableProcessors() > 1
+            ? 2 * Runtime.getRuntime().availableProcessors() : 0;          // Blocks inflated ahead of the reader
+
+    private CatalogFile() {
+    }
+
+    // Streams every book to a temporary file and swaps it into place, returns the number of records written.
+    // The old file is never truncated in place, so a mapped or half-written save cannot be corrupted.
+    public static int write(Iterable<Book> books, Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(0);
+            long position = HEADER_SIZE;
+            long[] offsets = new long[1024];
+            for (Book book : books) {
+                byte[] record = record(book);
+                if (buffer.remaining() < record.length) {
+                    drain(channel, buffer);
+                }
+                if (record.length > buffer.capacity()) {
+                    channel.write(ByteBuffer.wrap(record));
+                } else {
+                    buffer.put(record);
+                }
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = position;
+                position += record.length;
+            }
+            for (int i = 0; i < count; i++) {                              // Offset table for random access readers
+                if (buffer.remaining() < 8) {
+                    drain(channel, buffer);
+                }
+                buffer.putLong(offsets[i]);
+            }
+            if (buffer.remaining() < TRAILER_SIZE) {
+                drain(channel, buffer);
+            }
+            buffer.putLong(position).putInt(INDEX_MAGIC);
+            drain(channel, buffer);
+            buffer.putInt(count).flip();
+            channel.write(buffer, HEADER_SIZE - 4);                        // Patch record count into the header
+            channel.force(true);                                           // Data must be on disk before the rename is
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    // Same as write, in Deflate-compressed blocks (version 3). Smaller and not much slower to write, but the
+    // file cannot be memory-mapped.
+    public static int writeCompressed(Iterable<Book> books, Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(BLOCK_VERSION).putShort(DEFLATE).putInt(0).flip();
+            writeFully(channel, header);
+            byte[] raw = new byte[BLOCK_SIZE];
+            byte[] compressed = new byte[BLOCK_SIZE + BLOCK_HEADER_SIZE];
+            int length = 0;
+            int records = 0;
+            for (Book book : books) {
+                byte[] record = record(book);
+                if (length + record.length > raw.length && records > 0) {
+                    compressed = writeBlock(channel, deflater, raw, length, records, compressed);
+                    length = 0;
+                    records = 0;
+                }
+                if (record.length > raw.length) {
+                    raw = new byte[record.length];                         // Only for oversized records
+                }
+                System.arraycopy(record, 0, raw, length, record.length);
+                length += record.length;
+                records++;
+                count++;
+            }
+            if (records > 0) {
+                writeBlock(channel, deflater, raw, length, records, compressed);
+            }
+            header.clear();
+            header.putInt(count).flip();
+            channel.write(header, HEADER_SIZE - 4);                        // Patch record count into the header
+            channel.force(true);                                           // Data must be on disk before the rename is
+        } finally {
+            deflater.end();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    // Compresses and writes one block, returns the (possibly grown) output array for the next one
+    private static byte[] writeBlock(FileChannel channel, Deflater deflater, byte[] raw, int length, int records, byte[] out)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(raw, 0, length);
+        deflater.reset();
+        deflater.setInput(raw, 0, length);
+        deflater.finish();
+        int size = BLOCK_HEADER_SIZE;
+        while (!deflater.finished()) {
+            if (size == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            size += deflater.deflate(out, size, out.length - size);
+        }
+        ByteBuffer.wrap(out, 0, BLOCK_HEADER_SIZE).putInt(records).putInt(length).putInt(size - BLOCK_HEADER_SIZE).putInt((int) crc.getValue());
+        writeFully(channel, ByteBuffer.wrap(out, 0, size));
+        return out;
+    }
+
+    // Opens a save file for streaming reads, falling back to the legacy serialized list format
+    public static Reader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try {
+            channel.read(buffer);
+            buffer.flip();
+            if (buffer.remaining() >= 2 && buffer.getShort(0) == LEGACY_MAGIC) {
+                channel.close();
+                return new Reader(readLegacy(file));
+            }
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a library save file");
+            }
+            short version = buffer.getShort();
+            short flags = buffer.getShort();
+            if (version > BLOCK_VERSION || (version == BLOCK_VERSION && flags != DEFLATE)) {
+                throw new IOException("Unsupported save file version " + version);
+            }
+            int count = buffer.getInt();
+            return version == BLOCK_VERSION ? new Reader(new Blocks(channel, buffer, count), count) : new Reader(channel, buffer, count);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Encodes one book as a complete record (tag, length, body); rejects a field too long for its length prefix
+    static byte[] encode(Book book) throws ValidationException {
+        byte tag = book instanceof FictionBook ? FICTION : book instanceof Textbook ? TEXTBOOK : BOOK;
+        byte[] title = field("Title", book.getTitle());
+        byte[] author = field("Author", book.getAuthor());
+        byte[] isbn = field("ISBN", book.getISBN());
+        byte[] genre = tag == BOOK ? null : field("Genre", book.getGenre());
+        int body = 4 + 2 + title.length + 2 + author.length + 2 + isbn.length + (genre == null ? 0 : 2 + genre.length);
+        ByteBuffer record = ByteBuffer.allocate(5 + body);
+        record.put(tag).putInt(body).putInt(book.getYear());
+        putString(record, title);
+        putString(record, author);
+        putString(record, isbn);
+        if (genre != null) {
+            putString(record, genre);
+        }
+        return record.array();
+    }
+
+    // encode for the writers, which give up on the whole file rather than leave a book out
+    private static byte[] record(Book book) throws IOException {
+        try {
+            return encode(book);
+        } catch (ValidationException e) {
+            throw new IOException("Cannot save book " + book.getISBN() + ": " + e.getMessage());
+        }
+    }
+
+    // Decodes a record body positioned just after its tag and length
+    static Book decode(byte tag, ByteBuffer body) throws ValidationException, IOException {
+        int year = body.getInt();
+        String title = getString(body);
+        String author = getString(body);
+        String isbn = getString(body);
+        switch (tag) {
+            case FICTION:
+                return new FictionBook(title, author, year, isbn, getString(body));
+            case TEXTBOOK:
+                return new Textbook(title, author, year, isbn, getString(body));
+            case BOOK:
+                return new Book(title, author, year, isbn);
+            default:
+                throw new IOException("Unknown record type " + tag);
+        }
+    }
+
+    private static byte[] field(String name, String value) throws ValidationException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Validation.MAX_FIELD_BYTES) {
+            throw new ValidationException(name + " is too long to save (" + bytes.length + " bytes, at most "
+                    + Validation.MAX_FIELD_BYTES + ")");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (buffer.hasArray()) {
+            int start = buffer.arrayOffset() + buffer.position();
+            buffer.position(buffer.position() + length);
+            return new String(buffer.array(), start, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Migration path for Books.dat files written by ObjectOutputStream
+    @SuppressWarnings("unchecked")
+    private static Iterator<Book> readLegacy(Path file) throws IOException {
+        try (ObjectInputStream in = new LegacyInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return ((List<Book>) in.readObject()).iterator();
+        } catch (EOFException e) {
+            throw new IOException("Unreadable legacy save file: " + file + " is truncated");
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unreadable legacy save file: " + e.getMessage());
+        }
+    }
+
+    // Legacy files name the book classes from before they moved into this package. FictionBook and Textbook had
+    // no serialVersionUID there, so the old class descriptors are swapped for the current ones when the fields match.
+    private static final class LegacyInputStream extends ObjectInputStream {
+        private static final Map<String, Class<?>> CLASSES = Map.of(
+                "Book", Book.class, "FictionBook", FictionBook.class, "Textbook", Textbook.class);
+
+        LegacyInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass saved = super.readClassDescriptor();
+            Class<?> type = CLASSES.get(saved.getName());
+            if (type == null) {
+                return saved;
+            }
+            ObjectStreamClass current = ObjectStreamClass.lookup(type);
+            return sameFields(saved, current) ? current : saved;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> type = CLASSES.get(desc.getName());
+            return type != null ? type : super.resolveClass(desc);
+        }
+
+        private static boolean sameFields(ObjectStreamClass saved, ObjectStreamClass current) {
+            ObjectStreamField[] a = saved.getFields();
+            ObjectStreamField[] b = current.getFields();
+            if (a.length != b.length) {
+                return false;
+            }
+            for (int i = 0; i < a.length; i++) {
+                if (!a[i].getName().equals(b[i].getName()) || a[i].getTypeCode() != b[i].getTypeCode()
+                        || !Objects.equals(a[i].getTypeString(), b[i].getTypeString())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Pulls one book at a time so the catalog never holds the file and the decoded list at once
+    static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final Iterator<Book> legacy;
+        private final Blocks blocks;
+        private final int count;
+        private int read;
+        private byte[] scratch = new byte[256];
+        private ByteBuffer block = ByteBuffer.allocate(0);                 // Inflated block being decoded
+
+        private Reader(FileChannel channel, ByteBuffer buffer, int count) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.legacy = null;
+            this.blocks = null;
+            this.count = count;
+        }
+
+        private Reader(Blocks blocks, int count) {
+            this.channel = blocks.channel;
+            this.buffer = null;
+            this.legacy = null;
+            this.blocks = blocks;
+            this.count = count;
+        }
+
+        private Reader(Iterator<Book> legacy) {
+            this.channel = null;
+            this.buffer = null;
+            this.legacy = legacy;
+            this.blocks = null;
+            this.count = -1;
+        }
+
+        // Number of records declared in the header, -1 when unknown
+        public int count() {
+            return count;
+        }
+
+        public boolean isLegacy() {
+            return legacy != null;
+        }
+
+        // Returns the next book, or null at end of file
+        public Book next() throws IOException, ValidationException {
+            if (legacy != null) {
+                return legacy.hasNext() ? legacy.next() : null;
+            }
+            if (blocks != null) {
+                return nextInBlock();
+            }
+            if (read == count || !fill(5)) {                               // Stop before the offset table
+                return null;
+            }
+            read++;
+            byte tag = buffer.get();
+            int length = buffer.getInt();
+            if (length < 0) {
+                throw new IOException("Corrupt record length " + length);
+            }
+            if (length > buffer.capacity()) {
+                return decode(tag, readLarge(length));
+            }
+            if (!fill(length)) {
+                throw new EOFException("Truncated record at end of save file");
+            }
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return decode(tag, ByteBuffer.wrap(scratch, 0, length));
+        }
+
+        private Book nextInBlock() throws IOException, ValidationException {
+            if (!block.hasRemaining()) {
+                block = blocks.next();
+                if (block == null) {
+                    return null;
+                }
+            }
+            read++;
+            byte tag = block.get();
+            int length = block.getInt();
+            if (length < 0 || length > block.remaining()) {
+                throw new IOException("Corrupt record length " + length);
+            }
+            int end = block.position() + length;
+            try {
+                return decode(tag, block);
+            } finally {
+                block.position(end);
+            }
+        }
+
+        // A record body larger than the read buffer: what is buffered, then the rest straight from the file
+        private ByteBuffer readLarge(int length) throws IOException {
+            if (scratch.length < length) {
+                scratch = new byte[length];
+            }
+            ByteBuffer body = ByteBuffer.wrap(scratch, 0, length);
+            ByteBuffer buffered = buffer.duplicate();
+            buffered.limit(buffered.position() + Math.min(buffer.remaining(), length));
+            body.put(buffered);
+            buffer.position(buffered.position());
+            while (body.hasRemaining()) {
+                if (channel.read(body) < 0) {
+                    throw new EOFException("Truncated record at end of save file");
+                }
+            }
+            return ByteBuffer.wrap(scratch, 0, length);
+        }
+
+        // Makes sure at least n bytes are buffered, returns false on a clean end of file
+        private boolean fill(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return true;
+            }
+            buffer.compact();
+            if (buffer.capacity() < n) {
+                throw new IOException("Record of " + n + " bytes exceeds read buffer");
+            }
+            while (buffer.position() < n) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            if (buffer.remaining() == 0) {
+                return false;
+            }
+            if (buffer.remaining() < n) {
+                throw new EOFException("Truncated record at end of save file");
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    // Compressed blocks of a version 3 file in order. Blocks are read sequentially but inflated and checked on the
+    // common pool, up to READ_AHEAD of them ahead of the one being decoded.
+    private static final class Blocks {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;                                   // Bytes read past the header
+        private final int count;
+        private final Deque<CompletableFuture<ByteBuffer>> pending = new ArrayDeque<>();
+        private int announced;                                             // Records in the blocks read so far
+
+        Blocks(FileChannel channel, ByteBuffer buffer, int count) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        // The next inflated block, or null after the last
+        ByteBuffer next() throws IOException {
+            while (announced < count && pending.size() <= READ_AHEAD) {
+                pending.add(readBlock());
+            }
+            CompletableFuture<ByteBuffer> block = pending.poll();
+            if (block == null) {
+                return null;
+            }
+            try {
+                return block.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted reading save file");
+            }
+        }
+
+        private CompletableFuture<ByteBuffer> readBlock() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+            readFully(header);
+            header.flip();
+            int records = header.getInt();
+            int length = header.getInt();
+            int size = header.getInt();
+            int crc = header.getInt();
+            if (records <= 0 || length < 0 || size < 0 || records > count - announced) {
+                throw new IOException("Corrupt block header in save file");
+            }
+            announced += records;
+            ByteBuffer compressed = ByteBuffer.allocate(size);
+            readFully(compressed);
+            if (READ_AHEAD == 0) {
+                return CompletableFuture.completedFuture(inflate(compressed.array(), length, crc));
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return inflate(compressed.array(), length, crc);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            });
+        }
+
+        private void readFully(ByteBuffer target) throws IOException {
+            while (target.hasRemaining()) {
+                if (buffer.hasRemaining()) {
+                    int n = Math.min(buffer.remaining(), target.remaining());
+                    ByteBuffer part = buffer.duplicate();
+                    part.limit(part.position() + n);
+                    target.put(part);
+                    buffer.position(buffer.position() + n);
+                } else if (channel.read(target) < 0) {
+                    throw new EOFException("Truncated block at end of save file");
+                }
+            }
+        }
+
+        private static ByteBuffer inflate(byte[] compressed, int length, int crc) throws IOException {
+            byte[] raw = new byte[length];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int n = 0;
+                while (n < length && !inflater.finished()) {
+                    int inflated = inflater.inflate(raw, n, length - n);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += inflated;
+                }
+                if (n != length || !inflater.finished()) {
+                    throw new IOException("Corrupt block in save file: inflated to the wrong length");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt block in save file: " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+            CRC32 check = new CRC32();
+            check.update(raw);
+            if ((int) check.getValue() != crc) {
+                throw new IOException("Corrupt block in save file: checksum mismatch");
+            }
+            return ByteBuffer.wrap(raw);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package lms;
+
+// Hooks for keeping indexes, the journal and other observers in step with every catalog mutation
+interface CatalogListener {
+    void bookAdded(int id, Book book);
+
+    void bookRemoved(int id, Book book);
+
+    // A book replaced by another with the same ISBN; indexes see a removal followed by an add
+    default void bookUpdated(int oldId, Book old, int id, Book book) {
+        bookRemoved(oldId, old);
+        bookAdded(id, book);
+    }
+
+    // The catalog moved its books from slot `from` up down over removed slots, keeping their order (see
+    // Catalog.compact); ids from there up held from before no longer point at the same books
+    default void slotsCompacted(int from) {
+    }
+
+    // A record in slot id that never counted as a book, a duplicate ISBN in a mapped save file, was dropped.
+    // Indexes hear of it as a removal; only what stores the slots needs this, the journal must not log it.
+    default void recordDropped(int id) {
+    }
+}
@@ -0,0 +1,386 @@
+package lms;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+// Local HTTP endpoint over a shared catalog, one thread per request (virtual threads where the JDK has them).
+//   GET    /books?q=&filter=&sort=&offset=&limit=    search, filter and sort, one page of results
+//   GET    /books/{isbn}                              a single book
+//   POST   /books                                     add a book, body is a JSON object as in the bulk import
+//   PUT    /books/{isbn}                              replace a book, body as for POST with the same ISBN
+//   DELETE /books/{isbn}                              remove a book
+//   GET    /suggest?q=&limit=                         type-ahead completions of the last word of q
+//   GET    /stats                                     query result cache counters
+//   GET    /metrics                                   timers, counters and gauges as Prometheus text (see Metrics)
+class CatalogServer {
+    private static final int BACKLOG = 4096;                               // Pending connections before the OS refuses
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 1000;
+    private static final int DEFAULT_SUGGESTIONS = 10;
+    private static final int MAX_SUGGESTIONS = 100;
+    private static final Metrics.Counter[] RESPONSES = {null, null,        // By status class, 2xx to 5xx
+            Metrics.counter("http.responses.2xx"), Metrics.counter("http.responses.3xx"),
+            Metrics.counter("http.responses.4xx"), Metrics.counter("http.responses.5xx")};
+
+    static {
+        // JDK HttpServer defaults: without TCP_NODELAY keep-alive responses stall ~40ms on delayed ACKs, and only
+        // 200 idle connections are kept open, so busy clients find theirs closed under them
+        defaultProperty("sun.net.httpserver.nodelay", "true");
+        defaultProperty("sun.net.httpserver.maxIdleConnections", Integer.toString(BACKLOG));
+    }
+
+    private final SharedCatalog catalog;
+    private final Journal journal;                                         // May be null
+    private final HttpServer server;
+    private final ExecutorService executor = newRequestExecutor();
+
+    private CatalogServer(SharedCatalog catalog, Journal journal, HttpServer server) {
+        this.catalog = catalog;
+        this.journal = journal;
+        this.server = server;
+    }
+
+    // Serves on the loopback interface, port 0 picks a free port
+    static CatalogServer start(SharedCatalog catalog, Journal journal, int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        CatalogServer server = new CatalogServer(catalog, journal, http);
+        http.createContext("/books", timed("http.books", server::handle));
+        http.createContext("/suggest", timed("http.suggest", server::suggest));
+        http.createContext("/stats", timed("http.stats", server::stats));
+        http.createContext("/metrics", server::metrics);
+        http.setExecutor(server.executor);
+        http.start();
+        return server;
+    }
+
+    private static HttpHandler timed(String name, HttpHandler handler) {
+        Metrics.Timer timer = Metrics.timer(name);
+        return exchange -> {
+            long start = Metrics.start();
+            try {
+                handler.handle(exchange);
+            } finally {
+                timer.record(start);
+            }
+        };
+    }
+
+    private static void defaultProperty(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    // Virtual thread per task on JDK 21+, looked up at runtime as the build targets 17; otherwise a cached pool of
+    // platform threads
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            if (!path.equals("/books") && !path.startsWith("/books/")) {
+                respond(exchange, 404, error("Not found"));
+                return;
+            }
+            String isbn = path.length() > "/books/".length() ? decode(path.substring("/books/".length())) : null;
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                    if (isbn == null) {
+                        list(exchange);
+                    } else {
+                        Book book = catalog.find(isbn);
+                        respond(exchange, book == null ? 404 : 200, book == null ? error("No book found with ISBN " + isbn) : book(new StringBuilder(), book));
+                    }
+                    break;
+                case "POST":
+                    add(exchange);
+                    break;
+                case "PUT":
+                    if (isbn == null) {
+                        respond(exchange, 405, error("Unsupported method PUT"));
+                    } else {
+                        update(exchange, isbn);
+                    }
+                    break;
+                case "DELETE":
+                    if (isbn == null) {
+                        respond(exchange, 405, error("Unsupported method DELETE"));
+                        break;
+                    }
+                    Book removed = catalog.remove(isbn);
+                    if (removed != null) {
+                        syncJournal();
+                    }
+                    respond(exchange, removed == null ? 404 : 200, removed == null ? error("No book found with ISBN " + isbn) : book(new StringBuilder(), removed));
+                    break;
+                default:
+                    respond(exchange, 405, error("Unsupported method " + exchange.getRequestMethod()));
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error("Unexpected error: " + e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void suggest(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestURI().getRawPath().equals("/suggest")) {
+                respond(exchange, 404, error("Not found"));
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, error("Unsupported method " + exchange.getRequestMethod()));
+                return;
+            }
+            Map<String, String> params = params(exchange.getRequestURI().getRawQuery());
+            int limit;
+            try {
+                limit = Math.min(Integer.parseInt(params.getOrDefault("limit", Integer.toString(DEFAULT_SUGGESTIONS))), MAX_SUGGESTIONS);
+            } catch (NumberFormatException e) {
+                respond(exchange, 400, error("Invalid limit"));
+                return;
+            }
+            List<String> suggestions = catalog.suggest(params.getOrDefault("q", ""), limit);
+            StringBuilder json = new StringBuilder("{\"suggestions\":[");
+            for (int i = 0; i < suggestions.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                string(json, suggestions.get(i));
+            }
+            respond(exchange, 200, json.append("]}"));
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error("Unexpected error: " + e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestURI().getRawPath().equals("/stats")) {
+                respond(exchange, 404, error("Not found"));
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, error("Unsupported method " + exchange.getRequestMethod()));
+                return;
+            }
+            QueryCache cache = catalog.queryCache();
+            StringBuilder json = new StringBuilder("{\"queryCache\":{");
+            json.append("\"hits\":").append(cache.hits());
+            json.append(",\"misses\":").append(cache.misses());
+            json.append(",\"entries\":").append(cache.size());
+            json.append(",\"bytes\":").append(cache.bytes());
+            json.append(",\"evictions\":").append(cache.evictions());
+            json.append(",\"invalidations\":").append(cache.invalidations());
+            respond(exchange, 200, json.append("}}"));
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error("Unexpected error: " + e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestURI().getRawPath().equals("/metrics")) {
+                respond(exchange, 404, error("Not found"));
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, error("Unsupported method " + exchange.getRequestMethod()));
+                return;
+            }
+            respond(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", Metrics.dump());
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error("Unexpected error: " + e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void list(HttpExchange exchange) throws IOException {
+        Map<String, String> params = params(exchange.getRequestURI().getRawQuery());
+        SortOrder order = null;
+        int offset, limit;
+        try {
+            String sort = params.get("sort");
+            order = sort == null ? null : SortOrder.valueOf(sort.toUpperCase(Locale.ROOT));
+            offset = Integer.parseInt(params.getOrDefault("offset", "0"));
+            limit = Math.min(Integer.parseInt(params.getOrDefault("limit", Integer.toString(DEFAULT_LIMIT))), MAX_LIMIT);
+        } catch (IllegalArgumentException e) {                             // Also NumberFormatException
+            respond(exchange, 400, error("Invalid sort, offset or limit"));
+            return;
+        }
+        SharedCatalog.Page page;
+        if (params.containsKey("where")) {
+            try {
+                page = catalog.select(params.get("where"), params.get("filter"), order, offset, limit);
+            } catch (ValidationException e) {
+                respond(exchange, 400, error(e.getMessage()));
+                return;
+            }
+        } else {
+            page = catalog.query(params.get("q"), params.get("filter"), order, offset, limit);
+        }
+        StringBuilder json = new StringBuilder(64 + 128 * page.books.size());
+        json.append("{\"total\":").append(page.total);
+        if (page.plan != null) {
+            json.append(",\"plan\":");
+            string(json, page.plan);
+        }
+        json.append(",\"books\":[");
+        for (int i = 0; i < page.books.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            book(json, page.books.get(i));
+        }
+        respond(exchange, 200, json.append("]}"));
+    }
+
+    private void add(HttpExchange exchange) throws IOException {
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            Book book = BatchImport.parseBook(body);
+            catalog.add(book);
+            syncJournal();                                                 // Outside the write lock, so concurrent adds share an fsync
+            respond(exchange, 201, book(new StringBuilder(), book));
+        } catch (ValidationException | IllegalArgumentException e) {
+            respond(exchange, 400, error(e.getMessage()));
+        }
+    }
+
+    private void update(HttpExchange exchange, String isbn) throws IOException {
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            Book book = BatchImport.parseBook(body);
+            if (!Catalog.normalizeISBN(book.getISBN()).equals(Catalog.normalizeISBN(isbn))) {
+                respond(exchange, 400, error("ISBN " + book.getISBN() + " does not match " + isbn));
+                return;
+            }
+            if (catalog.update(book) == null) {
+                respond(exchange, 404, error("No book found with ISBN " + isbn));
+                return;
+            }
+            syncJournal();
+            respond(exchange, 200, book(new StringBuilder(), book));
+        } catch (ValidationException | IllegalArgumentException e) {
+            respond(exchange, 400, error(e.getMessage()));
+        }
+    }
+
+    private void syncJournal() throws IOException {
+        if (journal != null) {
+            journal.awaitDurable();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        respond(exchange, status, "application/json; charset=utf-8", json);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, CharSequence text) throws IOException {
+        byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+        if (status >= 200 && status < 600) {
+            RESPONSES[status / 100].increment();
+        }
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> params(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+            }
+        }
+        return params;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    // Same keys as the bulk import's JSON lines
+    static StringBuilder book(StringBuilder json, Book book) {
+        json.append("{\"title\":");
+        string(json, book.getTitle());
+        json.append(",\"author\":");
+        string(json, book.getAuthor());
+        json.append(",\"year\":").append(book.getYear()).append(",\"isbn\":");
+        string(json, book.getISBN());
+        json.append(",\"type\":");
+        string(json, book instanceof Textbook ? "Textbook" : book instanceof FictionBook ? "Fiction" : "Non-Fiction");
+        json.append(",\"genre\":");
+        string(json, book.getGenre());
+        return json.append('}');
+    }
+
+    private static StringBuilder error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        string(json, message);
+        return json.append('}');
+    }
+
+    static void string(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,367 @@
+package lms;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Ordered feed of catalog changes for other systems to sync from. Every add, remove and update gets the next
+// sequence number (continuing across sessions) and goes into a bounded ring buffer:
+//
+//   - in-process subscribers pull batches from their own position in the ring. A subscriber that falls a
+//     whole ring behind holds up changes for at most the grace period, then it is lapped and must resync.
+//   - a writer thread is the one subscriber that never gets lapped: it appends each batch it pulls to a
+//     tail-able file of JSON lines next to the save file, one flush per batch, rotating it once it is large.
+//
+//   {"seq":7,"time":1760000000000,"op":"update","isbn":"978-1844162949","book":{...}}
+//
+// Changes made before the feed is opened (loading the save file, replaying the journal) are not in it.
+class ChangeFeed implements CatalogListener, Closeable {
+    enum Op {
+        ADD, REMOVE, UPDATE
+    }
+
+    private static final int TAIL_BYTES = 1 << 16;                         // Enough to hold the last line of a file
+    private static final int WRITE_BATCH = 4096;                           // Most events the writer takes at once
+    private static final Metrics.Counter LAPPED = Metrics.counter("changeFeed.lapped");
+    private static final Metrics.Timer WRITE_TIME = Metrics.timer("changeFeed.write");
+
+    private final Event[] ring;
+    private final int mask;
+    private final long graceNanos;
+    private final long first;                                              // Sequence of the first event of this session
+    private long sequence;                                                 // Sequence of the last event published
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final Path file;                                               // Null for an in-process feed
+    private final long rotateBytes;
+    private FileChannel channel;
+    private Thread writer;
+    private IOException failure;
+    private boolean closed;
+
+    // In-process feed only; capacity is rounded up to a power of two
+    ChangeFeed(int capacity, long grace, TimeUnit unit) {
+        this(capacity, grace, unit, 0, null, 0);
+    }
+
+    private ChangeFeed(int capacity, long grace, TimeUnit unit, long sequence, Path file, long rotateBytes) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new Event[size];
+        this.mask = size - 1;
+        this.graceNanos = unit.toNanos(grace);
+        this.sequence = sequence;
+        this.first = sequence + 1;
+        this.file = file;
+        this.rotateBytes = rotateBytes;
+    }
+
+    // Feed that also writes to "<save file>.changes", continuing from the last sequence number in it.
+    // Subscribes to the catalog.
+    static ChangeFeed open(Path saveFile, Catalog catalog, int capacity, long grace, TimeUnit unit, long rotateBytes) throws IOException {
+        Path file = saveFile.resolveSibling(saveFile.getFileName() + ".changes");
+        long last = lastSequence(file, true);
+        if (last == 0) {
+            last = lastSequence(rotated(file), false);
+        }
+        ChangeFeed feed = new ChangeFeed(capacity, grace, unit, last, file, rotateBytes);
+        feed.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        Subscription tail = feed.subscribe(last, false);
+        feed.writer = new Thread(() -> feed.writeLoop(tail), "change-feed-writer");
+        feed.writer.setDaemon(true);
+        feed.writer.start();
+        catalog.addListener(feed);
+        return feed;
+    }
+
+    @Override
+    public void bookAdded(int id, Book book) {
+        publish(Op.ADD, book.getISBN(), book);
+    }
+
+    @Override
+    public void bookRemoved(int id, Book book) {
+        publish(Op.REMOVE, book.getISBN(), null);
+    }
+
+    @Override
+    public void bookUpdated(int oldId, Book old, int id, Book book) {
+        publish(Op.UPDATE, book.getISBN(), book);
+    }
+
+    // Sequence number of the latest change, 0 before the first one
+    synchronized long sequence() {
+        return sequence;
+    }
+
+    // Subscriber that starts with the change after the given sequence number; sequence() for changes from now on
+    synchronized Subscription subscribe(long after) {
+        return subscribe(after, true);
+    }
+
+    private synchronized Subscription subscribe(long after, boolean lappable) {
+        if (after < oldest() - 1 || after > sequence) {
+            throw new IllegalArgumentException("Changes after " + after + " are not in the feed (it holds "
+                    + oldest() + " to " + sequence + ")");
+        }
+        Subscription subscription = new Subscription(after, lappable);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    // Stops the writer once it has written every change so far
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // Called by the catalog, with its write lock held in a SharedCatalog. Waits while the ring is full: for the
+    // file writer as long as it takes, for other subscribers until the grace period runs out.
+    private synchronized void publish(Op op, String isbn, Book book) {
+        long deadline = System.nanoTime() + graceNanos;
+        while (true) {
+            Subscription slowest = null;
+            for (Subscription subscription : subscriptions) {
+                if (sequence - subscription.position >= ring.length && (slowest == null || subscription.position < slowest.position)) {
+                    slowest = subscription;
+                }
+            }
+            if (slowest == null) {
+                break;
+            }
+            long wait = deadline - System.nanoTime();
+            if (slowest.lappable && wait <= 0) {
+                slowest.lapped = true;
+                subscriptions.remove(slowest);
+                LAPPED.increment();
+                continue;
+            }
+            try {
+                if (slowest.lappable) {
+                    TimeUnit.NANOSECONDS.timedWait(this, wait);
+                } else {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;                                                     // Overwrites; the writer is shutting down
+            }
+        }
+        sequence++;
+        ring[(int) sequence & mask] = new Event(sequence, System.currentTimeMillis(), op, isbn, book);
+        notifyAll();
+    }
+
+    private long oldest() {
+        return Math.max(first, sequence - ring.length + 1);
+    }
+
+    // Takes what the subscriber has not seen yet, up to max events, waiting up to timeout for the first one
+    private synchronized List<Event> poll(Subscription subscription, int max, long timeout, TimeUnit unit)
+            throws InterruptedException, LappedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (subscription.position == sequence && !subscription.lapped && !subscription.closed && !closed) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0) {
+                return Collections.emptyList();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+        }
+        if (subscription.lapped) {
+            throw new LappedException(subscription.position);
+        }
+        int count = (int) Math.min(max, sequence - subscription.position);
+        List<Event> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(ring[(int) (subscription.position + 1 + i) & mask]);
+        }
+        subscription.position += count;
+        notifyAll();                                                       // Room for a publisher waiting on this one
+        return batch;
+    }
+
+    // Pulls batches for the file: larger ones the longer a write takes, so a burst costs few writes
+    private void writeLoop(Subscription tail) {
+        try {
+            write(tail);
+        } finally {
+            tail.close();                                                  // Stop holding up the catalog
+        }
+    }
+
+    private void write(Subscription tail) {
+        StringBuilder lines = new StringBuilder();
+        while (true) {
+            List<Event> batch;
+            try {
+                batch = tail.poll(WRITE_BATCH, 1, TimeUnit.SECONDS);
+            } catch (InterruptedException | LappedException e) {
+                return;
+            }
+            if (batch.isEmpty()) {
+                synchronized (this) {
+                    if (closed && tail.position == sequence) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            long start = Metrics.start();
+            lines.setLength(0);
+            for (Event event : batch) {
+                event.json(lines).append('\n');
+            }
+            try {
+                ByteBuffer data = StandardCharsets.UTF_8.encode(CharBuffer.wrap(lines));
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                if (rotateBytes > 0 && channel.size() >= rotateBytes) {
+                    rotate();
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing change feed: " + e.getMessage());
+                synchronized (this) {
+                    failure = e;
+                }
+                return;
+            }
+            WRITE_TIME.record(start);
+        }
+    }
+
+    // The current file becomes "<file>.1", replacing the one before, and a new file starts
+    private void rotate() throws IOException {
+        channel.close();
+        Files.move(file, rotated(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static Path rotated(Path file) {
+        return file.resolveSibling(file.getFileName() + ".1");
+    }
+
+    // Sequence number on the last complete line of a feed file, 0 if there is none. A line torn by a crash is
+    // cut off when repair is set, so tailing readers never see it completed by the next session.
+    private static long lastSequence(Path file, boolean repair) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            ByteBuffer tail = ByteBuffer.allocate((int) Math.min(size, TAIL_BYTES));
+            in.read(tail, size - tail.capacity());
+            String text = new String(tail.array(), 0, tail.position(), StandardCharsets.UTF_8);
+            int end = text.lastIndexOf('\n');
+            if (repair && end + 1 < text.length()) {
+                in.truncate(size - tail.capacity() + text.substring(0, end + 1).getBytes(StandardCharsets.UTF_8).length);
+            }
+            if (end < 0) {
+                return 0;
+            }
+            String line = text.substring(text.lastIndexOf('\n', end - 1) + 1, end);
+            int from = line.indexOf("\"seq\":") + "\"seq\":".length();
+            int to = line.indexOf(',', from);
+            try {
+                return Long.parseLong(line.substring(from, to));
+            } catch (RuntimeException e) {
+                throw new IOException("Unreadable last line in " + file);
+            }
+        }
+    }
+
+    // One change. book is the book as it is now, null for a removal.
+    static final class Event {
+        final long sequence;
+        final long time;                                                   // Epoch milliseconds
+        final Op op;
+        final String isbn;
+        final Book book;
+
+        Event(long sequence, long time, Op op, String isbn, Book book) {
+            this.sequence = sequence;
+            this.time = time;
+            this.op = op;
+            this.isbn = isbn;
+            this.book = book;
+        }
+
+        StringBuilder json(StringBuilder json) {
+            json.append("{\"seq\":").append(sequence).append(",\"time\":").append(time);
+            json.append(",\"op\":\"").append(op.name().toLowerCase(Locale.ROOT)).append("\",\"isbn\":");
+            CatalogServer.string(json, isbn);
+            if (book != null) {
+                json.append(",\"book\":");
+                CatalogServer.book(json, book);
+            }
+            return json.append('}');
+        }
+
+        @Override
+        public String toString() {
+            return json(new StringBuilder()).toString();
+        }
+    }
+
+    // A subscriber's position in the feed: the sequence number of the last change it has taken
+    final class Subscription implements AutoCloseable {
+        private final boolean lappable;
+        private long position;
+        private boolean lapped;
+        private boolean closed;
+
+        private Subscription(long position, boolean lappable) {
+            this.position = position;
+            this.lappable = lappable;
+        }
+
+        // The changes not taken yet, at most max, oldest first; waits up to timeout for one if there are none.
+        // Empty after a timeout or once the subscription or feed is closed.
+        List<Event> poll(int max, long timeout, TimeUnit unit) throws InterruptedException, LappedException {
+            return ChangeFeed.this.poll(this, max, timeout, unit);
+        }
+
+        long position() {
+            synchronized (ChangeFeed.this) {
+                return position;
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (ChangeFeed.this) {
+                closed = true;
+                subscriptions.remove(this);
+                ChangeFeed.this.notifyAll();
+            }
+        }
+    }
+
+    // The subscriber fell a whole ring behind and missed changes; it has to reload the catalog and subscribe again
+    static final class LappedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        LappedException(long position) {
+            super("Change feed subscriber fell behind after change " + position + "; reload the catalog and subscribe again");
+        }
+    }
+}
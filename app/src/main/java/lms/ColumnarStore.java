@@ -0,0 +1,249 @@
+package lms;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+// Books packed into primitive columns instead of one object graph per book (-Dlms.catalog=columnar):
+//   years   : short per row (years are validated to lie between 0 and the current year)
+//   isbns   : long per row, 4 bits per character above a 4-bit length (see pack), or NO_ISBN
+//   kinds   : char per row, code into a dictionary of up to 65536 (type tag, genre) pairs
+//   offsets : int per row, start of the row's text; a row ends where the next one starts
+//   text    : title length (byte) | title | author length (byte) | author [| isbn, when NO_ISBN], all UTF-8
+// Rows are decoded into short-lived Book objects on access, like mapped save file records, while scans read single
+// fields of a row through the Columns accessors without building (or validating) a Book.
+final class ColumnarStore {
+    static final long NO_ISBN = -1;                                        // ISBN did not pack, it follows the author
+    private static final String ISBN_CHARS = "0123456789-Xx ";             // Nibble values 0-13
+    private static final int MAX_PACKED = 15;                              // Characters that fit next to the length nibble
+
+    private final Map<String, Integer> kindCodes = new HashMap<>();        // Type tag + genre -> dictionary code
+    private Columns columns = new Columns(16, 256, 4);
+    private int rows;
+    private int textLength;
+    private int kinds;
+
+    // Pre-sizes the row columns ahead of a bulk load; text grows as needed
+    void ensureCapacity(int expected) {
+        if (expected > columns.years.length - rows) {
+            columns = columns.grow(rows + expected, columns.text.length, columns.genres.length);
+        }
+    }
+
+    // Appends a book, returns its row number; a book the columns cannot hold is rejected before anything changes
+    int append(Book book) throws ValidationException {
+        byte[] title = book.getTitle().getBytes(StandardCharsets.UTF_8);
+        byte[] author = book.getAuthor().getBytes(StandardCharsets.UTF_8);
+        long isbn = pack(book.getISBN());
+        byte[] unpacked = isbn == NO_ISBN ? book.getISBN().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int length = 2 + title.length + author.length + unpacked.length;
+        if (title.length > 0xFF || author.length > 0xFF || book.getYear() > Short.MAX_VALUE) {
+            throw new ValidationException("Book does not fit the columnar catalog: " + book.getTitle());
+        }
+        if ((long) textLength + length > Integer.MAX_VALUE - 8) {
+            throw new ValidationException("Columnar catalog is full");
+        }
+        int kind = kind(book);
+        Columns c = columns;
+        if (rows == c.years.length || textLength + length > c.text.length) {
+            int rowCapacity = rows == c.years.length ? rows * 2 : c.years.length;
+            int textCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) textLength + length, c.text.length * 3L / 2));
+            c = columns = c.grow(rowCapacity, textCapacity, c.genres.length);
+        }
+        int row = rows++;
+        int at = textLength;
+        c.text[at++] = (byte) title.length;
+        System.arraycopy(title, 0, c.text, at, title.length);
+        at += title.length;
+        c.text[at++] = (byte) author.length;
+        System.arraycopy(author, 0, c.text, at, author.length);
+        at += author.length;
+        System.arraycopy(unpacked, 0, c.text, at, unpacked.length);
+        c.years[row] = (short) book.getYear();
+        c.isbns[row] = isbn;
+        c.kinds[row] = (char) kind;
+        c.offsets[row] = textLength;
+        textLength += length;
+        c.offsets[row + 1] = textLength;
+        return row;
+    }
+
+    // A new store holding the kept rows in their order, copied column by column without decoding them. This store
+    // and the arrays it handed out are left as they are.
+    ColumnarStore retain(IntPredicate keep) {
+        Columns c = columns;
+        int keptRows = 0;
+        int keptText = 0;
+        for (int row = 0; row < rows; row++) {
+            if (keep.test(row)) {
+                keptRows++;
+                keptText += c.offsets[row + 1] - c.offsets[row];
+            }
+        }
+        ColumnarStore store = new ColumnarStore();
+        store.kindCodes.putAll(kindCodes);
+        store.kinds = kinds;
+        Columns copy = store.columns = new Columns(Math.max(16, keptRows), Math.max(256, keptText), c.genres.length);
+        System.arraycopy(c.tags, 0, copy.tags, 0, kinds);
+        System.arraycopy(c.genres, 0, copy.genres, 0, kinds);
+        for (int row = 0; row < rows; row++) {
+            if (!keep.test(row)) {
+                continue;
+            }
+            int at = c.offsets[row];
+            int length = c.offsets[row + 1] - at;
+            int to = store.rows++;
+            System.arraycopy(c.text, at, copy.text, store.textLength, length);
+            copy.years[to] = c.years[row];
+            copy.isbns[to] = c.isbns[row];
+            copy.kinds[to] = c.kinds[row];
+            copy.offsets[to] = store.textLength;
+            store.textLength += length;
+            copy.offsets[to + 1] = store.textLength;
+        }
+        return store;
+    }
+
+    // The current arrays; rows appended later land beyond any row already read through them
+    Columns columns() {
+        return columns;
+    }
+
+    int size() {
+        return rows;
+    }
+
+    // Dictionary code of the book's (type tag, genre) pair, added on first use
+    private int kind(Book book) throws ValidationException {
+        byte tag = book instanceof FictionBook ? CatalogFile.FICTION : book instanceof Textbook ? CatalogFile.TEXTBOOK : CatalogFile.BOOK;
+        String key = (char) tag + book.getGenre();
+        Integer code = kindCodes.get(key);
+        if (code != null) {
+            return code;
+        }
+        if (kinds > Character.MAX_VALUE) {
+            throw new ValidationException("Columnar catalog cannot hold more than " + kinds + " distinct genres");
+        }
+        if (kinds == columns.genres.length) {
+            columns = columns.grow(columns.years.length, columns.text.length, kinds * 2);
+        }
+        columns.tags[kinds] = tag;
+        columns.genres[kinds] = book.getGenre();
+        kindCodes.put(key, kinds);
+        return kinds++;
+    }
+
+    // ISBN as up to 15 nibbles (digits, '-', 'X', 'x', ' ') above a 4-bit length, NO_ISBN for anything else
+    static long pack(String isbn) {
+        if (isbn.length() > MAX_PACKED) {
+            return NO_ISBN;
+        }
+        long packed = isbn.length();
+        for (int i = 0; i < isbn.length(); i++) {
+            int nibble = ISBN_CHARS.indexOf(isbn.charAt(i));
+            if (nibble < 0) {
+                return NO_ISBN;
+            }
+            packed |= (long) nibble << (4 + 4 * i);
+        }
+        return packed;                                                     // Length 15 with top nibble 15 never occurs, so never NO_ISBN
+    }
+
+    static String unpack(long packed) {
+        char[] chars = new char[(int) (packed & 0xF)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = ISBN_CHARS.charAt((int) (packed >>> (4 + 4 * i)) & 0xF);
+        }
+        return new String(chars);
+    }
+
+    // The store's arrays between two grow steps. Appends only write past the rows already stored, and growing
+    // copies into a new frame, so a frame captured with a row limit can be read unlocked while the store grows.
+    static final class Columns {
+        private final short[] years;
+        private final long[] isbns;
+        private final char[] kinds;
+        private final int[] offsets;
+        private final byte[] text;
+        private final byte[] tags;                                         // Dictionary code -> type tag
+        private final String[] genres;                                     // Dictionary code -> genre
+
+        private Columns(int rowCapacity, int textCapacity, int kindCapacity) {
+            this(new short[rowCapacity], new long[rowCapacity], new char[rowCapacity], new int[rowCapacity + 1],
+                    new byte[textCapacity], new byte[kindCapacity], new String[kindCapacity]);
+        }
+
+        private Columns(short[] years, long[] isbns, char[] kinds, int[] offsets, byte[] text, byte[] tags, String[] genres) {
+            this.years = years;
+            this.isbns = isbns;
+            this.kinds = kinds;
+            this.offsets = offsets;
+            this.text = text;
+            this.tags = tags;
+            this.genres = genres;
+        }
+
+        private Columns grow(int rowCapacity, int textCapacity, int kindCapacity) {
+            boolean rows = rowCapacity != years.length;
+            return new Columns(rows ? Arrays.copyOf(years, rowCapacity) : years, rows ? Arrays.copyOf(isbns, rowCapacity) : isbns,
+                    rows ? Arrays.copyOf(kinds, rowCapacity) : kinds, rows ? Arrays.copyOf(offsets, rowCapacity + 1) : offsets,
+                    textCapacity != text.length ? Arrays.copyOf(text, textCapacity) : text,
+                    Arrays.copyOf(tags, kindCapacity), Arrays.copyOf(genres, kindCapacity));
+        }
+
+        // Decodes a stored row into a new Book of its original type
+        Book read(int row) {
+            String title = title(row);
+            String author = author(row);
+            String isbn = isbn(row);
+            int kind = kinds[row];
+            try {
+                switch (tags[kind]) {
+                    case CatalogFile.FICTION:
+                        return new FictionBook(title, author, years[row], isbn, genres[kind]);
+                    case CatalogFile.TEXTBOOK:
+                        return new Textbook(title, author, years[row], isbn, genres[kind]);
+                    default:
+                        return new Book(title, author, years[row], isbn);
+                }
+            } catch (ValidationException e) {
+                throw new IllegalStateException("Corrupt row " + row + " in columnar store: " + e.getMessage());
+            }
+        }
+
+        String title(int row) {
+            int at = offsets[row];
+            return new String(text, at + 1, text[at] & 0xFF, StandardCharsets.UTF_8);
+        }
+
+        String author(int row) {
+            int at = authorAt(row);
+            return new String(text, at + 1, text[at] & 0xFF, StandardCharsets.UTF_8);
+        }
+
+        int year(int row) {
+            return years[row];
+        }
+
+        String isbn(int row) {
+            if (isbns[row] != NO_ISBN) {
+                return unpack(isbns[row]);
+            }
+            int at = authorAt(row);
+            at += 1 + (text[at] & 0xFF);
+            return new String(text, at, offsets[row + 1] - at, StandardCharsets.UTF_8);
+        }
+
+        // What the row's book returns from getGenre, Non-Fiction for a plain Book
+        String genre(int row) {
+            return genres[kinds[row]];
+        }
+
+        private int authorAt(int row) {
+            int at = offsets[row];
+            return at + 1 + (text[at] & 0xFF);
+        }
+    }
+}
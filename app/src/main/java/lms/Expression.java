@@ -0,0 +1,357 @@
+package lms;
+
+import java.util.*;
+
+// Multi-attribute query over book fields, parsed from a small expression syntax. Clauses are separated by spaces
+// and must all match; a clause with comma-separated values matches any of them:
+//
+//   title:horus  author:"dan abnett"  genre:sci-fi,fantasy  isbn:978-1844167401
+//   year:2000..2010  year:..1999  year>=2000  year<2010  year=2006
+//   sort:title|author|year|isbn  (taken off into the query's sort order)
+//
+// Words without a field are matched like a search term against title, author and genre. genre follows the
+// filter menu (a type such as Fiction, or a genre or subject) and type is accepted as another name for it.
+// Values are normalized the way the indexes compare them, so equivalent expressions are equal.
+final class Expression {
+    enum Field {
+        TEXT, TITLE, AUTHOR, GENRE, ISBN, YEAR
+    }
+
+    private final List<Condition> conditions;                              // Sorted, so equal expressions compare equal
+    final SortOrder order;                                                 // Null if no sort clause
+
+    private Expression(List<Condition> conditions, SortOrder order) {
+        this.conditions = conditions;
+        this.order = order;
+    }
+
+    // Whether the input uses the expression syntax, rather than being a plain search term
+    static boolean isExpression(String input) {
+        for (String token : tokenize(input)) {
+            int split = split(token);
+            if (split > 0 && (field(token.substring(0, split)) != null || token.substring(0, split).equalsIgnoreCase("sort"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Expression parse(String input) throws ValidationException {
+        List<Condition> conditions = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        SortOrder order = null;
+        for (String token : tokenize(input)) {
+            int split = split(token);
+            if (split <= 0) {
+                text.append(text.length() > 0 ? " " : "").append(unquote(token));
+                continue;
+            }
+            String name = token.substring(0, split);
+            char c = token.charAt(split);
+            boolean twoChars = (c == '<' || c == '>') && split + 1 < token.length() && token.charAt(split + 1) == '=';
+            String operator = token.substring(split, split + (twoChars ? 2 : 1));
+            String value = unquote(token.substring(split + operator.length()));
+            if (name.equalsIgnoreCase("sort")) {
+                order = sortOrder(value);
+                continue;
+            }
+            Field field = field(name);
+            if (field == null) {
+                throw new ValidationException("Unknown field '" + name + "' (use title, author, genre, isbn, year or sort)");
+            }
+            if (value.isEmpty()) {
+                throw new ValidationException("Missing value for " + name);
+            }
+            if (field != Field.YEAR && !operator.equals(":") && !operator.equals("=")) {
+                throw new ValidationException("Only year can be compared with " + operator);
+            }
+            conditions.add(field == Field.YEAR ? yearCondition(operator, value) : condition(field, value));
+        }
+        if (text.length() > 0) {
+            String term = SearchIndex.normalize(text.toString());
+            if (!term.isEmpty()) {
+                conditions.add(new Condition(Field.TEXT, new String[] {term}, null));
+            }
+        }
+        return new Expression(merge(conditions), order);
+    }
+
+    List<Condition> conditions() {
+        return conditions;
+    }
+
+    boolean matches(Book book) {
+        for (Condition condition : conditions) {
+            if (!condition.matches(book)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Equal when the same books match; the sort order is the query's concern, see Query
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Expression && conditions.equals(((Expression) other).conditions);
+    }
+
+    @Override
+    public int hashCode() {
+        return conditions.hashCode();
+    }
+
+    // Normalized form, e.g. "author:abnett genre:sci-fi year:2000..2010"; the sort order is left out
+    @Override
+    public String toString() {
+        StringJoiner out = new StringJoiner(" ");
+        for (Condition condition : conditions) {
+            out.add(condition.toString());
+        }
+        return out.toString();
+    }
+
+    private static Condition condition(Field field, String value) throws ValidationException {
+        Set<String> values = new TreeSet<>();
+        for (String part : value.split(",")) {
+            String key = field == Field.ISBN ? Catalog.normalizeISBN(part) : field == Field.GENRE ? FacetIndex.fold(part.trim())
+                    : SearchIndex.normalize(part);
+            if (!key.isEmpty()) {
+                values.add(key);
+            }
+        }
+        if (values.isEmpty()) {
+            throw new ValidationException("Missing value for " + field.name().toLowerCase(Locale.ROOT));
+        }
+        return new Condition(field, values.toArray(new String[0]), null);
+    }
+
+    // Year ranges, inclusive, as pairs in a flat array
+    private static Condition yearCondition(String operator, String value) throws ValidationException {
+        if (!operator.equals(":")) {
+            int year = year(value);
+            switch (operator) {
+                case "=":
+                    return new Condition(Field.YEAR, null, new int[] {year, year});
+                case ">":
+                    return new Condition(Field.YEAR, null, new int[] {year + 1, Integer.MAX_VALUE});
+                case ">=":
+                    return new Condition(Field.YEAR, null, new int[] {year, Integer.MAX_VALUE});
+                case "<":
+                    return new Condition(Field.YEAR, null, new int[] {Integer.MIN_VALUE, year - 1});
+                default:
+                    return new Condition(Field.YEAR, null, new int[] {Integer.MIN_VALUE, year});
+            }
+        }
+        String[] parts = value.split(",");
+        int[] ranges = new int[2 * parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            int dots = part.indexOf("..");
+            if (dots < 0) {
+                ranges[2 * i] = ranges[2 * i + 1] = year(part);
+            } else {
+                ranges[2 * i] = dots == 0 ? Integer.MIN_VALUE : year(part.substring(0, dots));
+                ranges[2 * i + 1] = dots + 2 == part.length() ? Integer.MAX_VALUE : year(part.substring(dots + 2));
+            }
+        }
+        return new Condition(Field.YEAR, null, ranges);
+    }
+
+    private static int year(String value) throws ValidationException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ValidationException("'" + value + "' is not a year");
+        }
+    }
+
+    private static SortOrder sortOrder(String value) throws ValidationException {
+        for (SortOrder order : SortOrder.values()) {
+            if (order.name().equalsIgnoreCase(value) || order.getLabel().equalsIgnoreCase(value)) {
+                return order;
+            }
+        }
+        throw new ValidationException("Unknown sort order '" + value + "' (use title, author, year or isbn)");
+    }
+
+    // Single-range year conditions are intersected into one, so year>=2000 year<=2010 is one index range
+    private static List<Condition> merge(List<Condition> conditions) {
+        List<Condition> merged = new ArrayList<>();
+        Condition years = null;
+        for (Condition condition : conditions) {
+            if (condition.field == Field.YEAR && condition.ranges.length == 2) {
+                years = years == null ? condition : new Condition(Field.YEAR, null, new int[] {
+                        Math.max(years.ranges[0], condition.ranges[0]), Math.min(years.ranges[1], condition.ranges[1])});
+            } else if (!merged.contains(condition)) {
+                merged.add(condition);
+            }
+        }
+        if (years != null) {
+            merged.add(years);
+        }
+        merged.sort(Comparator.comparing(Condition::toString));
+        return Collections.unmodifiableList(merged);
+    }
+
+    private static Field field(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "title":
+                return Field.TITLE;
+            case "author":
+                return Field.AUTHOR;
+            case "genre":
+            case "type":
+                return Field.GENRE;
+            case "isbn":
+                return Field.ISBN;
+            case "year":
+                return Field.YEAR;
+            default:
+                return null;
+        }
+    }
+
+    // Position of the operator in "name:value", "name>=value" etc., -1 for a plain word
+    private static int split(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == ':' || c == '=' || c == '<' || c == '>') {
+                return i;
+            }
+            if (!Character.isLetter(c)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    // Splits on spaces outside double quotes; quotes stay in the tokens
+    private static List<String> tokenize(String input) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            if (Character.isWhitespace(c) && !quoted) {
+                if (token.length() > 0) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                }
+            } else {
+                token.append(c);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private static String unquote(String value) {
+        return value.replace("\"", "");
+    }
+
+    // One clause: the field matches any of the values (or for years, falls in any of the ranges)
+    static final class Condition {
+        final Field field;
+        final String[] values;                                             // Normalized, sorted; null for years
+        final int[] ranges;                                                // Inclusive from/to pairs; null otherwise
+
+        private Condition(Field field, String[] values, int[] ranges) {
+            this.field = field;
+            this.values = values;
+            this.ranges = ranges;
+        }
+
+        boolean matches(Book book) {
+            switch (field) {
+                case YEAR:
+                    for (int i = 0; i < ranges.length; i += 2) {
+                        if (book.getYear() >= ranges[i] && book.getYear() <= ranges[i + 1]) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case ISBN:
+                    return Arrays.binarySearch(values, Catalog.normalizeISBN(book.getISBN())) >= 0;
+                case GENRE:
+                    for (String value : values) {
+                        if (book.matchesFilter(value)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                default:
+                    String[] fields = field == Field.TITLE ? new String[] {SearchIndex.normalize(book.getTitle())}
+                            : field == Field.AUTHOR ? new String[] {SearchIndex.normalize(book.getAuthor())} : SearchIndex.fields(book);
+                    for (String value : values) {
+                        if (SearchIndex.contains(fields, value)) {
+                            return true;
+                        }
+                    }
+                    return false;
+            }
+        }
+
+        // The same test against a live catalog slot, reading only the field it is about. Genres go by the
+        // book's own matchesFilter, so that one is still decoded.
+        boolean matches(Catalog catalog, int id) {
+            switch (field) {
+                case YEAR:
+                    int year = catalog.year(id);
+                    for (int i = 0; i < ranges.length; i += 2) {
+                        if (year >= ranges[i] && year <= ranges[i + 1]) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case ISBN:
+                    return Arrays.binarySearch(values, Catalog.normalizeISBN(catalog.isbn(id))) >= 0;
+                case GENRE:
+                    return matches(catalog.get(id));
+                default:
+                    String[] fields = field == Field.TITLE ? new String[] {SearchIndex.normalize(catalog.title(id))}
+                            : field == Field.AUTHOR ? new String[] {SearchIndex.normalize(catalog.author(id))} : SearchIndex.fields(catalog, id);
+                    for (String value : values) {
+                        if (SearchIndex.contains(fields, value)) {
+                            return true;
+                        }
+                    }
+                    return false;
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Condition)) {
+                return false;
+            }
+            Condition condition = (Condition) other;
+            return field == condition.field && Arrays.equals(values, condition.values) && Arrays.equals(ranges, condition.ranges);
+        }
+
+        @Override
+        public int hashCode() {
+            return (field.hashCode() * 31 + Arrays.hashCode(values)) * 31 + Arrays.hashCode(ranges);
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner out = new StringJoiner(",", field == Field.TEXT ? "" : field.name().toLowerCase(Locale.ROOT) + ":", "");
+            if (ranges != null) {
+                for (int i = 0; i < ranges.length; i += 2) {
+                    out.add(ranges[i] == ranges[i + 1] ? Integer.toString(ranges[i])
+                            : (ranges[i] == Integer.MIN_VALUE ? "" : ranges[i]) + ".." + (ranges[i + 1] == Integer.MAX_VALUE ? "" : ranges[i + 1]));
+                }
+            } else {
+                for (String value : values) {
+                    out.add(value.contains(" ") || value.contains(",") ? '"' + value + '"' : value);
+                }
+            }
+            return out.toString();
+        }
+    }
+}
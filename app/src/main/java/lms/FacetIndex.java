@@ -0,0 +1,160 @@
+package lms;
+
+import java.util.*;
+
+// Facet index for filterBooks: book types and Fiction/Textbook genres interned to id bitmaps, so a filter is
+// a bitmap lookup (plus intersection with the current view) instead of a matchesFilter call per book.
+// Answers follow BookType.matchesFilter exactly; books of any other Book subclass are still asked directly.
+class FacetIndex implements CatalogListener {
+    private static final String ALL = fold("All");
+    private static final String FICTION = fold("Fiction");
+    private static final String NON_FICTION = fold("Non-Fiction");
+    private static final String TEXTBOOKS = fold("Textbooks");
+
+    private final Catalog catalog;
+    private IdBitmap all = new IdBitmap();
+    private final Map<String, IdBitmap> types = new HashMap<>();          // Folded type name -> ids
+    private final Map<String, IdBitmap> genres = new HashMap<>();         // Folded genre/subject -> ids
+    private IdBitmap custom = new IdBitmap();                              // Books whose class the index does not model
+    private boolean built;
+
+    public FacetIndex(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public void bookAdded(int id, Book book) {
+        if (built) {
+            index(id, book);
+        }
+    }
+
+    @Override
+    public void bookRemoved(int id, Book book) {
+        if (!built) {
+            return;
+        }
+        all.remove(id);
+        custom.remove(id);
+        String type = type(book);
+        if (type != null) {
+            remove(types, type, id);
+            if (type != NON_FICTION) {
+                remove(genres, fold(book.getGenre()), id);
+            }
+        }
+    }
+
+    // The bitmaps hold slot ids, so once built they are filled again from the books in their new slots
+    @Override
+    public void slotsCompacted(int from) {
+        if (!built) {
+            return;
+        }
+        all = new IdBitmap();
+        custom = new IdBitmap();
+        types.clear();
+        genres.clear();
+        built = false;
+        ensureBuilt();
+    }
+
+    // Ids of the books matching the filter criteria, in ascending (insertion) order
+    public IdBitmap matching(String criteria) {
+        ensureBuilt();
+        String key = fold(criteria);
+        if (key.equals(ALL)) {
+            return all;
+        }
+        IdBitmap result = new IdBitmap();
+        IdBitmap type = types.get(key);
+        if (type != null) {
+            result = result.or(type);
+        }
+        IdBitmap genre = genres.get(key);
+        if (genre != null) {
+            result = result.or(genre);
+        }
+        if (!custom.isEmpty()) {
+            int[] ids = custom.toArray();
+            int[] hits = ParallelScan.range(0, ids.length).map(i -> ids[i]).filter(id -> catalog.get(id).matchesFilter(criteria)).toArray();
+            for (int id : hits) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    // Upper bound on matching(criteria).size() without building the bitmap
+    public int count(String criteria) {
+        ensureBuilt();
+        String key = fold(criteria);
+        if (key.equals(ALL)) {
+            return all.size();
+        }
+        IdBitmap type = types.get(key);
+        IdBitmap genre = genres.get(key);
+        return (type == null ? 0 : type.size()) + (genre == null ? 0 : genre.size()) + custom.size();
+    }
+
+    void ensureBuilt() {
+        if (built) {
+            return;
+        }
+        int limit = catalog.slotCount();
+        for (int start = 0; start < limit; start += ParallelScan.CHUNK) {
+            Book[] books = ParallelScan.books(catalog, start, Math.min(limit, start + ParallelScan.CHUNK));
+            for (int i = 0; i < books.length; i++) {
+                if (books[i] != null) {
+                    index(start + i, books[i]);
+                }
+            }
+        }
+        built = true;
+    }
+
+    private void index(int id, Book book) {
+        all.add(id);
+        String type = type(book);
+        if (type == null) {
+            custom.add(id);
+            return;
+        }
+        types.computeIfAbsent(type, k -> new IdBitmap()).add(id);
+        if (type != NON_FICTION) {
+            genres.computeIfAbsent(fold(book.getGenre()), k -> new IdBitmap()).add(id);
+        }
+    }
+
+    private static void remove(Map<String, IdBitmap> facet, String key, int id) {
+        IdBitmap ids = facet.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                facet.remove(key);
+            }
+        }
+    }
+
+    // Type facet of the three classes whose matchesFilter the index reproduces, null for anything else
+    private static String type(Book book) {
+        Class<?> type = book.getClass();
+        if (type == FictionBook.class) {
+            return FICTION;
+        } else if (type == Textbook.class) {
+            return TEXTBOOKS;
+        } else if (type == Book.class) {
+            return NON_FICTION;
+        }
+        return null;
+    }
+
+    // Case folding with the same equivalence as String.equalsIgnoreCase
+    static String fold(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,354 @@
+package lms;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+// Compressed set of slot ids in the style of a roaring bitmap: ids are split into 65536-id chunks keyed by
+// their high 16 bits, each chunk stored as a sorted char array while sparse and as a bitmap once dense
+class IdBitmap {
+    private static final int ARRAY_MAX = 4096;                             // Beyond this a bitmap chunk is smaller
+    private int[] keys = new int[0];                                       // High 16 bits, ascending
+    private Chunk[] chunks = new Chunk[0];
+    private int size;
+
+    // Bitmap holding the given ids, which need not be sorted
+    public static IdBitmap of(int[] ids, int count) {
+        IdBitmap bitmap = new IdBitmap();
+        for (int i = 0; i < count; i++) {
+            bitmap.add(ids[i]);
+        }
+        return bitmap;
+    }
+
+    public void add(int id) {
+        int pos = Arrays.binarySearch(keys, id >>> 16);
+        Chunk chunk;
+        if (pos >= 0) {
+            chunk = chunks[pos];
+        } else {
+            pos = -pos - 1;
+            chunk = new Chunk();
+            keys = insert(keys, pos, id >>> 16);
+            chunks = insert(chunks, pos, chunk);
+        }
+        if (chunk.add((char) id)) {
+            size++;
+        }
+    }
+
+    public void remove(int id) {
+        int pos = Arrays.binarySearch(keys, id >>> 16);
+        if (pos >= 0 && chunks[pos].remove((char) id)) {
+            size--;
+            if (chunks[pos].cardinality == 0) {
+                keys = delete(keys, pos);
+                chunks = delete(chunks, pos);
+            }
+        }
+    }
+
+    public boolean contains(int id) {
+        int pos = Arrays.binarySearch(keys, id >>> 16);
+        return pos >= 0 && chunks[pos].contains((char) id);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Ids in both bitmaps, computed chunk by chunk
+    public IdBitmap and(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Chunk chunk = chunks[i].and(other.chunks[j]);
+                if (chunk.cardinality > 0) {
+                    result.append(keys[i], chunk);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Ids in either bitmap
+    public IdBitmap or(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j >= other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                result.append(keys[i], chunks[i].copy());
+                i++;
+            } else if (i >= keys.length || other.keys[j] < keys[i]) {
+                result.append(other.keys[j], other.chunks[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], chunks[i].or(other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Ids in ascending order
+    public int[] toArray() {
+        int[] ids = new int[size];
+        int n = 0;
+        PrimitiveIterator.OfInt it = iterator();
+        while (it.hasNext()) {
+            ids[n++] = it.nextInt();
+        }
+        return ids;
+    }
+
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int chunk;
+            private int low = -1;
+
+            {
+                advance();
+            }
+
+            private void advance() {
+                while (chunk < chunks.length) {
+                    low = chunks[chunk].next(low + 1);
+                    if (low >= 0) {
+                        return;
+                    }
+                    chunk++;
+                    low = -1;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return chunk < chunks.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (chunk >= chunks.length) {
+                    throw new NoSuchElementException();
+                }
+                int id = keys[chunk] << 16 | low;
+                advance();
+                return id;
+            }
+        };
+    }
+
+    private void append(int key, Chunk chunk) {
+        keys = insert(keys, keys.length, key);
+        chunks = insert(chunks, chunks.length, chunk);
+        size += chunk.cardinality;
+    }
+
+    private static int[] insert(int[] array, int pos, int value) {
+        int[] grown = new int[array.length + 1];
+        System.arraycopy(array, 0, grown, 0, pos);
+        grown[pos] = value;
+        System.arraycopy(array, pos, grown, pos + 1, array.length - pos);
+        return grown;
+    }
+
+    private static Chunk[] insert(Chunk[] array, int pos, Chunk value) {
+        Chunk[] grown = new Chunk[array.length + 1];
+        System.arraycopy(array, 0, grown, 0, pos);
+        grown[pos] = value;
+        System.arraycopy(array, pos, grown, pos + 1, array.length - pos);
+        return grown;
+    }
+
+    private static int[] delete(int[] array, int pos) {
+        int[] shrunk = new int[array.length - 1];
+        System.arraycopy(array, 0, shrunk, 0, pos);
+        System.arraycopy(array, pos + 1, shrunk, pos, shrunk.length - pos);
+        return shrunk;
+    }
+
+    private static Chunk[] delete(Chunk[] array, int pos) {
+        Chunk[] shrunk = new Chunk[array.length - 1];
+        System.arraycopy(array, 0, shrunk, 0, pos);
+        System.arraycopy(array, pos + 1, shrunk, pos, shrunk.length - pos);
+        return shrunk;
+    }
+
+    // Low 16 bits of the ids sharing one key: sorted array (bits == null) or 1024-word bitmap
+    private static final class Chunk {
+        char[] array = new char[4];
+        long[] bits;
+        int cardinality;
+
+        boolean contains(char low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (bits != null) {
+                long before = bits[low >>> 6];
+                bits[low >>> 6] |= 1L << low;
+                if (before == bits[low >>> 6]) {
+                    return false;
+                }
+                cardinality++;
+                return true;
+            }
+            int pos = Arrays.binarySearch(array, 0, cardinality, low);
+            if (pos >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toBits();
+                return add(low);
+            }
+            pos = -pos - 1;
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(array, pos, array, pos + 1, cardinality - pos);
+            array[pos] = low;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (bits != null) {
+                long before = bits[low >>> 6];
+                bits[low >>> 6] &= ~(1L << low);
+                if (before == bits[low >>> 6]) {
+                    return false;
+                }
+                if (--cardinality <= ARRAY_MAX) {
+                    toArray();
+                }
+                return true;
+            }
+            int pos = Arrays.binarySearch(array, 0, cardinality, low);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(array, pos + 1, array, pos, cardinality - pos - 1);
+            cardinality--;
+            return true;
+        }
+
+        // First member at or after the given low value, -1 if none
+        int next(int from) {
+            if (bits != null) {
+                int word = from >>> 6;
+                if (word >= bits.length) {
+                    return -1;
+                }
+                long w = bits[word] & (-1L << from);
+                while (true) {
+                    if (w != 0) {
+                        return word * 64 + Long.numberOfTrailingZeros(w);
+                    }
+                    if (++word == bits.length) {
+                        return -1;
+                    }
+                    w = bits[word];
+                }
+            }
+            if (from > 0xFFFF) {
+                return -1;
+            }
+            int pos = Arrays.binarySearch(array, 0, cardinality, (char) from);
+            if (pos < 0) {
+                pos = -pos - 1;
+            }
+            return pos < cardinality ? array[pos] : -1;
+        }
+
+        Chunk and(Chunk other) {
+            Chunk result = new Chunk();
+            if (bits != null && other.bits != null) {
+                result.bits = new long[1024];
+                for (int i = 0; i < 1024; i++) {
+                    result.bits[i] = bits[i] & other.bits[i];
+                    result.cardinality += Long.bitCount(result.bits[i]);
+                }
+                if (result.cardinality <= ARRAY_MAX) {
+                    result.toArray();
+                }
+                return result;
+            }
+            Chunk sparse = bits == null ? this : other;
+            Chunk dense = sparse == this ? other : this;
+            result.array = new char[Math.max(4, sparse.cardinality)];
+            for (int i = 0; i < sparse.cardinality; i++) {
+                if (dense.contains(sparse.array[i])) {
+                    result.array[result.cardinality++] = sparse.array[i];
+                }
+            }
+            return result;
+        }
+
+        Chunk or(Chunk other) {
+            Chunk result = copy();
+            if (other.bits != null && result.bits == null) {
+                result = other.copy();
+                other = this;
+            }
+            if (other.bits != null) {
+                result.cardinality = 0;
+                for (int i = 0; i < 1024; i++) {
+                    result.bits[i] |= other.bits[i];
+                    result.cardinality += Long.bitCount(result.bits[i]);
+                }
+                return result;
+            }
+            for (int i = 0; i < other.cardinality; i++) {
+                result.add(other.array[i]);
+            }
+            return result;
+        }
+
+        Chunk copy() {
+            Chunk copy = new Chunk();
+            copy.array = array == null ? null : Arrays.copyOf(array, Math.max(4, cardinality));
+            copy.bits = bits == null ? null : bits.clone();
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        private void toBits() {
+            bits = new long[1024];
+            for (int i = 0; i < cardinality; i++) {
+                bits[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private void toArray() {
+            array = new char[Math.max(4, cardinality)];
+            int n = 0;
+            for (int word = 0; word < bits.length; word++) {
+                long w = bits[word];
+                while (w != 0) {
+                    array[n++] = (char) (word * 64 + Long.numberOfTrailingZeros(w));
+                    w &= w - 1;
+                }
+            }
+            bits = null;
+        }
+    }
+}
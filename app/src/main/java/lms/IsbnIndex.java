@@ -0,0 +1,130 @@
+package lms;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Normalized ISBN -> slot id. Keys that pack into a long (see ColumnarStore.pack) live in an open-addressing
+// table of primitives with linear probing, so the usual all-digit ISBN costs no objects; anything else falls
+// back to a HashMap.
+class IsbnIndex {
+    private static final long EMPTY = 0;                                   // Packed "" is 0, so "" goes to the fallback
+    private long[] keys = new long[16];
+    private int[] ids = new int[16];
+    private int packed;                                                    // Entries in the primitive table
+    private final Map<String, Integer> others = new HashMap<>();
+
+    // Slot id stored for the key, or -1
+    public int get(String key) {
+        long k = ColumnarStore.pack(key);
+        if (k == ColumnarStore.NO_ISBN || k == EMPTY) {
+            Integer id = others.get(key);
+            return id == null ? -1 : id;
+        }
+        for (int i = slot(k); keys[i] != EMPTY; i = (i + 1) & (keys.length - 1)) {
+            if (keys[i] == k) {
+                return ids[i];
+            }
+        }
+        return -1;
+    }
+
+    public boolean containsKey(String key) {
+        return get(key) >= 0;
+    }
+
+    public void put(String key, int id) {
+        long k = ColumnarStore.pack(key);
+        if (k == ColumnarStore.NO_ISBN || k == EMPTY) {
+            others.put(key, id);
+            return;
+        }
+        if (4L * (packed + 1) > 3L * keys.length) {                        // Load factor at most 3/4
+            resize(keys.length * 2);
+        }
+        int i = slot(k);
+        while (keys[i] != EMPTY && keys[i] != k) {
+            i = (i + 1) & (keys.length - 1);
+        }
+        if (keys[i] == EMPTY) {
+            packed++;
+        }
+        keys[i] = k;
+        ids[i] = id;
+    }
+
+    // Removes the key, returns its slot id or -1
+    public int remove(String key) {
+        long k = ColumnarStore.pack(key);
+        if (k == ColumnarStore.NO_ISBN || k == EMPTY) {
+            Integer id = others.remove(key);
+            return id == null ? -1 : id;
+        }
+        int mask = keys.length - 1;
+        int i = slot(k);
+        while (keys[i] != k) {
+            if (keys[i] == EMPTY) {
+                return -1;
+            }
+            i = (i + 1) & mask;
+        }
+        int id = ids[i];
+        // Backward-shift deletion: pull later entries of the probe run into the gap so lookups never stop early
+        for (int gap = i, j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            if (keys[j] == EMPTY) {
+                keys[gap] = EMPTY;
+                break;
+            }
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {               // Entry may move back to the gap
+                keys[gap] = keys[j];
+                ids[gap] = ids[j];
+                gap = j;
+            }
+        }
+        packed--;
+        return id;
+    }
+
+    // Points every id from `from` up at its new slot, renumbered[id - from], after the catalog compacted
+    public void renumber(int from, int[] renumbered) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY && ids[i] >= from) {
+                ids[i] = renumbered[ids[i] - from];
+            }
+        }
+        others.replaceAll((key, id) -> id >= from ? renumbered[id - from] : id);
+    }
+
+    // Grows the table ahead of a bulk load
+    public void ensureCapacity(int expected) {
+        int capacity = keys.length;
+        while (3L * capacity < 4L * (packed + expected) && capacity < 1 << 30) {
+            capacity *= 2;
+        }
+        if (capacity > keys.length) {
+            resize(capacity);
+        }
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;                                // Fibonacci hashing spreads the nibbles
+        return (int) (h >>> 32) & (keys.length - 1);
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldIds = ids;
+        keys = new long[capacity];
+        ids = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int j = slot(oldKeys[i]);
+                while (keys[j] != EMPTY) {
+                    j = (j + 1) & (capacity - 1);
+                }
+                keys[j] = oldKeys[i];
+                ids[j] = oldIds[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package lms;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+// Append-only write-ahead log of catalog mutations, stored as numbered segments next to the save file
+//
+//   entry : payload length (int) | CRC32 of payload (int) | payload
+//   payload : ADD + book record (as in CatalogFile) | REMOVE + ISBN (UTF-8)
+//
+// A background thread fsyncs appended entries in groups. Compaction rotates to a new segment, writes the save
+// file segments changed since the last compaction on another thread and then deletes the log segments it covers.
+// It starts once enough has been appended, or on a timer once changes are old enough even if none follow.
+class Journal implements CatalogListener, Closeable {
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final long GROUP_COMMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);    // Window for batching fsyncs
+    private static final long COMPACT_BYTES = 8L << 20;                                 // Compact once segments reach 8 MB
+    private static final long COMPACT_NANOS = TimeUnit.MINUTES.toNanos(10);             // ...or every 10 minutes of changes
+    private static final long COMPACT_CHECK_SECONDS = 60;                               // How often the timer looks
+    private static final int BATCH_BYTES = 1 << 20;                                     // Write buffer during a bulk load
+    private static final Metrics.Timer COMPACT_TIME = Metrics.timer("journal.compact");
+
+    private final Path saveFile;
+    private final Catalog catalog;
+    private final SegmentedSave store;
+    private final Object lock = new Object();
+    private final Object syncLock = new Object();
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(daemon("journal-compactor"));
+    private final Thread syncer;
+    private FileChannel channel;
+    private int segment;
+    private long appended;                                                 // Sequence of last appended entry
+    private long durable;                                                  // Sequence of last fsynced entry
+    private long uncompactedBytes;
+    private long lastCompaction = System.nanoTime();
+    private IOException failure;
+    private boolean closed;
+    private ByteBuffer batch;                                              // Entries not yet written, only during a bulk load
+    private int batched;                                                   // ...and how many
+
+    private Journal(Path saveFile, Catalog catalog, SegmentedSave store, int segment) throws IOException {
+        this.saveFile = saveFile;
+        this.catalog = catalog;
+        this.store = store;
+        this.segment = segment;
+        this.channel = openSegment(segment);
+        this.syncer = daemon("journal-sync").newThread(this::syncLoop);
+        syncer.start();
+        compactor.scheduleWithFixedDelay(this::compactIfDue, COMPACT_CHECK_SECONDS, COMPACT_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Replays every existing segment into the catalog, then starts logging its mutations. The store should
+    // already be tracking the catalog, so that replayed changes are part of the next compaction. Replay stops
+    // at the first torn or corrupt entry: its segment is cut off there, and any later segments are moved aside
+    // (renamed to .wal.discarded), since their changes cannot be applied without the ones that were lost.
+    public static Journal open(Path saveFile, Catalog catalog, SegmentedSave store) throws IOException {
+        int last = 0;
+        boolean broken = false;
+        for (int segment : segments(saveFile)) {
+            Path file = segmentPath(saveFile, segment);
+            if (broken) {
+                Files.move(file, file.resolveSibling(file.getFileName() + ".discarded"), StandardCopyOption.REPLACE_EXISTING);
+                System.err.println("Discarded journal segment " + file.getFileName() + " after a damaged one");
+                continue;
+            }
+            if (Files.size(file) == 0) {
+                Files.delete(file);                                        // Session that made no changes
+                continue;
+            }
+            long valid = replay(file, catalog);
+            if (valid < Files.size(file)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                }
+                broken = true;
+            }
+            last = segment;
+        }
+        Journal journal = new Journal(saveFile, catalog, store, last + 1);
+        catalog.addListener(journal);
+        return journal;
+    }
+
+    @Override
+    public void bookAdded(int id, Book book) {
+        byte[] record;
+        try {
+            record = CatalogFile.encode(book);
+        } catch (ValidationException e) {
+            synchronized (lock) {
+                failure = new IOException(e.getMessage());                 // Reported by awaitDurable
+                lock.notifyAll();
+            }
+            System.err.println("Error writing journal: " + e.getMessage());
+            return;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(1 + record.length);
+        payload.put(ADD).put(record);
+        append(payload.array());
+    }
+
+    @Override
+    public void bookRemoved(int id, Book book) {
+        byte[] isbn = book.getISBN().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + isbn.length);
+        payload.put(REMOVE).put(isbn);
+        append(payload.array());
+    }
+
+    // Blocks until every entry appended so far has been fsynced
+    public void awaitDurable() throws IOException {
+        synchronized (lock) {
+            long target = appended;
+            while (durable < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for journal sync");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // Bulk load: entries are buffered and written in large chunks, and compaction waits for endBatch
+    public void beginBatch() {
+        synchronized (lock) {
+            if (batch == null) {
+                batch = ByteBuffer.allocate(BATCH_BYTES);
+            }
+        }
+    }
+
+    // Writes out the rest of the batch, compacting if the batch made that due
+    public void endBatch() {
+        boolean compactDue;
+        synchronized (lock) {
+            if (batch == null) {
+                return;
+            }
+            flushBatch();
+            batch = null;
+            compactDue = compactDue();
+        }
+        if (compactDue) {
+            compact();
+        }
+    }
+
+    // Folds the journal into the save file in the background; the returned future yields what was written
+    public Future<SegmentedSave.Changes> compact() {
+        int covered;
+        SegmentedSave.Changes changes;
+        synchronized (catalog) {                                           // No change or compaction between snapshot and layout
+            synchronized (lock) {
+                try {
+                    covered = rotate();
+                } catch (IOException e) {
+                    CompletableFuture<SegmentedSave.Changes> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    return failed;
+                }
+                changes = store.changes(catalog.snapshot());               // O(1), written out while the catalog moves on
+                uncompactedBytes = 0;
+                lastCompaction = System.nanoTime();
+            }
+        }
+        return compactor.submit(() -> {
+            long start = Metrics.start();
+            try {
+                store.write(changes);
+                COMPACT_TIME.record(start);
+            } catch (IOException e) {
+                System.err.println("Error compacting journal: " + e.getMessage());
+                throw e;
+            }
+            for (int old : segments(saveFile)) {
+                if (old <= covered) {
+                    Files.deleteIfExists(segmentPath(saveFile, old));
+                }
+            }
+            return changes;
+        });
+    }
+
+    // Waits for pending compactions and syncs the current segment
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            flushBatch();
+        }
+        try {
+            awaitDurable();
+        } finally {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+            }
+            synchronized (syncLock) {
+                channel.close();
+            }
+        }
+    }
+
+    private void append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer entry = ByteBuffer.allocate(8 + payload.length);
+        entry.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        boolean compactDue;
+        synchronized (lock) {
+            uncompactedBytes += entry.limit();
+            if (batch != null) {
+                if (entry.remaining() > batch.remaining()) {
+                    flushBatch();
+                }
+                if (entry.remaining() <= batch.remaining()) {
+                    batch.put(entry);
+                    batched++;
+                    return;
+                }
+            }
+            if (!write(entry)) {
+                return;
+            }
+            appended++;
+            lock.notifyAll();
+            compactDue = compactDue();
+        }
+        if (compactDue) {
+            compact();
+        }
+    }
+
+    // Called with lock held
+    private void flushBatch() {
+        if (batch == null || batched == 0) {
+            return;
+        }
+        batch.flip();
+        if (write(batch)) {
+            appended += batched;                                           // Only now can the syncer cover them
+            lock.notifyAll();
+        }
+        batched = 0;
+        batch.clear();
+    }
+
+    // Called with lock held, records the failure for awaitDurable on error
+    private boolean write(ByteBuffer data) {
+        try {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            return true;
+        } catch (IOException e) {
+            failure = e;
+            System.err.println("Error writing journal: " + e.getMessage());
+            lock.notifyAll();
+            return false;
+        }
+    }
+
+    // Timer check, so an idle journal is folded in too. Takes the catalog first, as a mutation does before it
+    // appends, so no change is half made while compact() snapshots the catalog.
+    private void compactIfDue() {
+        synchronized (catalog) {
+            synchronized (lock) {
+                if (uncompactedBytes == 0 || batch != null || closed || !compactDue()) {
+                    return;
+                }
+            }
+            compact();
+        }
+    }
+
+    private boolean compactDue() {
+        return uncompactedBytes >= COMPACT_BYTES || System.nanoTime() - lastCompaction >= COMPACT_NANOS;
+    }
+
+    // Group commit: wait briefly for more entries, then one fsync covers all of them
+    private void syncLoop() {
+        while (true) {
+            synchronized (lock) {
+                while (durable == appended && !closed && failure == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed || failure != null) {
+                    return;
+                }
+            }
+            LockSupport.parkNanos(GROUP_COMMIT_NANOS);
+            long target;
+            synchronized (lock) {
+                target = appended;
+            }
+            IOException error = null;
+            synchronized (syncLock) {
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            synchronized (lock) {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durable = Math.max(durable, target);
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Closes the current segment (everything in it durable) and starts the next, returns the closed segment number.
+    // Called with lock held.
+    private int rotate() throws IOException {
+        flushBatch();
+        synchronized (syncLock) {
+            channel.force(false);
+            channel.close();
+            durable = appended;
+            lock.notifyAll();
+            channel = openSegment(++segment);
+            return segment - 1;
+        }
+    }
+
+    private FileChannel openSegment(int number) throws IOException {
+        return FileChannel.open(segmentPath(saveFile, number), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Applies a segment's entries in order, stopping at the first torn or corrupt entry. Returns the length of
+    // the entries applied, the file size if all of them were.
+    private static long replay(Path file, Catalog catalog) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        CRC32 crc = new CRC32();
+        long valid = 0;
+        while (data.remaining() >= 8) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length <= 0 || length > data.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(data.array(), data.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.wrap(data.array(), data.position(), length).slice();
+            data.position(data.position() + length);
+            valid = data.position();
+            byte op = payload.get();
+            try {
+                if (op == ADD) {
+                    byte tag = payload.get();
+                    payload.getInt();
+                    Book book = CatalogFile.decode(tag, payload);
+                    if (!catalog.contains(book.getISBN())) {               // Entry may already be in the snapshot
+                        catalog.add(book);
+                    }
+                } else if (op == REMOVE) {
+                    catalog.remove(StandardCharsets.UTF_8.decode(payload).toString());
+                }
+            } catch (ValidationException e) {
+                System.err.println("Skipping journal entry: " + e.getMessage());
+            }
+        }
+        return valid;
+    }
+
+    private static Path segmentPath(Path saveFile, int number) {
+        return saveFile.resolveSibling(String.format("%s.%06d.wal", saveFile.getFileName(), number));
+    }
+
+    // Existing segment numbers in ascending order
+    private static List<Integer> segments(Path saveFile) throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        Path dir = saveFile.toAbsolutePath().getParent();
+        String prefix = saveFile.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*.wal")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Integer.parseInt(name.substring(prefix.length(), name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
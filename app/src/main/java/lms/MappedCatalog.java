@@ -0,0 +1,161 @@
+package lms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.List;
+
+// Save file mapped into memory; records are located through the file's offset table and decoded only on access.
+// Several files (the segments of a SegmentedSave) can be mapped as one, their records numbered in file order.
+class MappedCatalog {
+    private final MappedByteBuffer[] maps;
+    private final int[] tables;                                            // Position of each file's offset table
+    private final int[] starts;                                            // Index of each file's first record
+    private final int count;
+
+    private MappedCatalog(MappedByteBuffer[] maps, int[] tables, int[] starts, int count) {
+        this.maps = maps;
+        this.tables = tables;
+        this.starts = starts;
+        this.count = count;
+    }
+
+    // Maps a save file, returns null when it has no offset table (legacy or older binary files)
+    public static MappedCatalog open(Path file) throws IOException {
+        return open(List.of(file));
+    }
+
+    // Maps the files as one catalog, returns null if any of them has no offset table
+    public static MappedCatalog open(List<Path> files) throws IOException {
+        MappedByteBuffer[] maps = new MappedByteBuffer[files.size()];
+        int[] tables = new int[files.size()];
+        int[] starts = new int[files.size()];
+        long count = 0;
+        for (int i = 0; i < maps.length; i++) {
+            MappedCatalog single = mapFile(files.get(i));
+            if (single == null) {
+                return null;
+            }
+            maps[i] = single.maps[0];
+            tables[i] = single.tables[0];
+            starts[i] = (int) count;
+            count += single.count;
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("Too many records to map");
+            }
+        }
+        return new MappedCatalog(maps, tables, starts, (int) count);
+    }
+
+    // Records in the given file
+    public int count(int file) {
+        return (file + 1 < starts.length ? starts[file + 1] : count) - starts[file];
+    }
+
+    private static MappedCatalog mapFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map");
+            }
+            if (length < CatalogFile.HEADER_SIZE + CatalogFile.TRAILER_SIZE) {
+                return null;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (map.getInt(0) != CatalogFile.MAGIC || map.getShort(4) < 2 || map.getShort(6) != 0 || map.getInt((int) length - 4) != CatalogFile.INDEX_MAGIC) {
+                return null;
+            }
+            int count = map.getInt(CatalogFile.HEADER_SIZE - 4);
+            long table = map.getLong((int) length - CatalogFile.TRAILER_SIZE);
+            if (count < 0 || table + 8L * count != length - CatalogFile.TRAILER_SIZE) {
+                throw new IOException(file + " has a corrupt offset table");
+            }
+            // The mapping stays valid after the channel closes
+            return new MappedCatalog(new MappedByteBuffer[] {map}, new int[] {(int) table}, new int[] {0}, count);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Decodes the full record at the given index
+    public Book read(int index) {
+        ByteBuffer record = record(index);
+        byte tag = record.get();
+        record.getInt();
+        try {
+            return CatalogFile.decode(tag, record);
+        } catch (ValidationException | IOException e) {
+            throw new IllegalStateException("Corrupt record " + index + " in mapped catalog: " + e.getMessage());
+        }
+    }
+
+    // Decodes only the ISBN field, used to build the ISBN index without materializing books
+    public String readISBN(int index) {
+        ByteBuffer record = fields(index);
+        skipString(record);
+        skipString(record);
+        return CatalogFile.getString(record);
+    }
+
+    // Single fields of a record for scans, decoded without building or validating a Book
+    public String title(int index) {
+        return CatalogFile.getString(fields(index));
+    }
+
+    public String author(int index) {
+        ByteBuffer record = fields(index);
+        skipString(record);
+        return CatalogFile.getString(record);
+    }
+
+    public int year(int index) {
+        ByteBuffer record = record(index);
+        return record.getInt(record.position() + 1 + 4);
+    }
+
+    // What the record's book returns from getGenre; plain books store none
+    public String genre(int index) {
+        ByteBuffer record = record(index);
+        if (record.get(record.position()) == CatalogFile.BOOK) {
+            return "Non-Fiction";                                          // As Book.getGenre
+        }
+        record.position(record.position() + 1 + 4 + 4);
+        skipString(record);
+        skipString(record);
+        skipString(record);
+        return CatalogFile.getString(record);
+    }
+
+    // The record positioned at its title, past the tag, body length and year
+    private ByteBuffer fields(int index) {
+        ByteBuffer record = record(index);
+        record.position(record.position() + 1 + 4 + 4);
+        return record;
+    }
+
+    private ByteBuffer record(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + count);
+        }
+        int file = maps.length == 1 ? 0 : Arrays.binarySearch(starts, index);
+        if (file < 0) {
+            file = -file - 2;                                              // Last file starting before the index
+        }
+        while (file + 1 < starts.length && starts[file + 1] == index) {    // Skip empty files starting at the same index
+            file++;
+        }
+        ByteBuffer record = maps[file].duplicate();
+        record.position((int) maps[file].getLong(tables[file] + 8 * (index - starts[file])));
+        return record;
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        buffer.position(buffer.position() + length);
+    }
+}
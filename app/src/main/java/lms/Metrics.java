@@ -0,0 +1,238 @@
+package lms;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.*;
+
+// Process-wide latency timers, counters and gauges. Timers and counters only record with -Dlms.metrics=true;
+// otherwise ENABLED is a constant false, so start() and record() compile down to nothing at the call sites.
+// Gauges are computed when read and are always available. Everything is readable through JMX as the
+// lms:type=Metrics MBean and as a plain-text dump in the Prometheus exposition format (GET /metrics).
+final class Metrics {
+    static final boolean ENABLED = Boolean.getBoolean("lms.metrics");   // -Dlms.metrics=true
+    static final String OBJECT_NAME = "lms:type=Metrics";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final Map<String, Object> REGISTRY = new ConcurrentSkipListMap<>();   // Name -> Timer, Counter or gauge
+    private static boolean registered;
+
+    static {
+        gauge("heap.used.bytes", () -> Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+        gauge("heap.committed.bytes", () -> Runtime.getRuntime().totalMemory());
+        gauge("heap.max.bytes", () -> Runtime.getRuntime().maxMemory());
+    }
+
+    private Metrics() {
+    }
+
+    // The timer with the given name, created on first use
+    static Timer timer(String name) {
+        return (Timer) REGISTRY.computeIfAbsent(name, key -> new Timer());
+    }
+
+    static Counter counter(String name) {
+        return (Counter) REGISTRY.computeIfAbsent(name, key -> new Counter());
+    }
+
+    // Registers a gauge, replacing any earlier one of the same name; it may be read from any thread
+    static void gauge(String name, LongSupplier value) {
+        REGISTRY.put(name, value);
+    }
+
+    // Start time for Timer.record, 0 when metrics are off
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Publishes the MBean on the platform MBean server, once; does nothing when metrics are off
+    static synchronized void registerMBean() {
+        if (!ENABLED || registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+
+    // Every metric in the Prometheus text format, timers as summaries in seconds
+    static String dump() {
+        StringBuilder out = new StringBuilder();
+        if (!ENABLED) {
+            out.append("# Timers and counters are off, start with -Dlms.metrics=true\n");
+        }
+        for (Map.Entry<String, Object> entry : REGISTRY.entrySet()) {
+            String name = "lms_" + entry.getKey().replace('.', '_');
+            Object metric = entry.getValue();
+            if (metric instanceof Timer) {
+                LatencyHistogram histogram = ((Timer) metric).histogram;
+                if (histogram == null) {
+                    continue;
+                }
+                name += "_seconds";
+                out.append("# TYPE ").append(name).append(" summary\n");
+                for (double quantile : QUANTILES) {
+                    out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                            .append(seconds(histogram.percentile(quantile))).append('\n');
+                }
+                out.append(name).append("_sum ").append(seconds(histogram.sum())).append('\n');
+                out.append(name).append("_count ").append(histogram.count()).append('\n');
+                out.append("# TYPE ").append(name).append("_max gauge\n");
+                out.append(name).append("_max ").append(seconds(histogram.max())).append('\n');
+            } else if (metric instanceof Counter) {
+                if (!ENABLED) {
+                    continue;
+                }
+                out.append("# TYPE ").append(name).append("_total counter\n");
+                out.append(name).append("_total ").append(((Counter) metric).get()).append('\n');
+            } else {
+                Long value = read((LongSupplier) metric);
+                if (value != null) {
+                    out.append("# TYPE ").append(name).append(" gauge\n");
+                    out.append(name).append(' ').append(value).append('\n');
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    // A gauge's value, or null if it cannot be read right now (e.g. no catalog loaded yet)
+    private static Long read(LongSupplier gauge) {
+        try {
+            return gauge.getAsLong();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Latency of one operation; call record(Metrics.start()) around it, typically in a finally block
+    static final class Timer {
+        private final LatencyHistogram histogram = ENABLED ? new LatencyHistogram() : null;
+
+        void record(long start) {
+            if (ENABLED) {
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        void increment() {
+            if (ENABLED) {
+                count.increment();
+            }
+        }
+
+        long get() {
+            return count.sum();
+        }
+    }
+
+    // Timers show up as <name>.count, .meanMicros, .p50Micros ... .p999Micros and .maxMicros, counters and gauges
+    // under their own names. The attribute list follows the registry, so metrics created later appear too.
+    private static final class MBean implements DynamicMBean {
+        private static final String[] TIMER_STATS = {"count", "meanMicros", "p50Micros", "p90Micros", "p99Micros", "p999Micros", "maxMicros"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object metric = REGISTRY.get(attribute);
+            if (metric instanceof Counter) {
+                return ((Counter) metric).get();
+            }
+            if (metric instanceof LongSupplier) {
+                return read((LongSupplier) metric);
+            }
+            int dot = attribute.lastIndexOf('.');
+            metric = dot < 0 ? null : REGISTRY.get(attribute.substring(0, dot));
+            if (metric instanceof Timer && ((Timer) metric).histogram != null) {
+                LatencyHistogram histogram = ((Timer) metric).histogram;
+                switch (attribute.substring(dot + 1)) {
+                    case "count":
+                        return histogram.count();
+                    case "meanMicros":
+                        return histogram.mean() / 1e3;
+                    case "p50Micros":
+                        return histogram.percentile(0.5) / 1e3;
+                    case "p90Micros":
+                        return histogram.percentile(0.9) / 1e3;
+                    case "p99Micros":
+                        return histogram.percentile(0.99) / 1e3;
+                    case "p999Micros":
+                        return histogram.percentile(0.999) / 1e3;
+                    case "maxMicros":
+                        return histogram.max() / 1e3;
+                    default:
+                        break;
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Skipped, as the interface allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if (actionName.equals("dump") && (params == null || params.length == 0)) {
+                return dump();
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Object> entry : REGISTRY.entrySet()) {
+                String name = entry.getKey();
+                Object metric = entry.getValue();
+                if (metric instanceof Timer) {
+                    for (String stat : TIMER_STATS) {
+                        String type = stat.equals("count") ? "long" : "double";
+                        attributes.add(new MBeanAttributeInfo(name + "." + stat, type, name + " latency", true, false, false));
+                    }
+                } else {
+                    String description = metric instanceof Counter ? name + " count" : name;
+                    attributes.add(new MBeanAttributeInfo(name, "long", description, true, false, false));
+                }
+            }
+            MBeanOperationInfo dump = new MBeanOperationInfo("dump", "All metrics as Prometheus text", new MBeanParameterInfo[0],
+                    "java.lang.String", MBeanOperationInfo.INFO);
+            return new MBeanInfo(Metrics.class.getName(), "Library catalog metrics", attributes.toArray(new MBeanAttributeInfo[0]),
+                    null, new MBeanOperationInfo[] {dump}, null);
+        }
+    }
+}
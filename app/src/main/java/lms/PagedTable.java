@@ -0,0 +1,66 @@
+package lms;
+
+import java.io.PrintStream;
+import java.util.Formatter;
+import java.util.List;
+
+// Renders a book list one page at a time; each page is formatted into one reused buffer and written with a single flush
+class PagedTable {
+    private static final String NEWLINE = System.lineSeparator();
+    private final StringBuilder buffer = new StringBuilder(8192);
+    private final Formatter formatter = new Formatter(buffer);
+    private final int pageSize;
+    private List<Book> books = List.of();
+    private int page;
+
+    public PagedTable(int pageSize) {
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    // Shows a new list, starting from its first page
+    public void setBooks(List<Book> books) {
+        this.books = books;
+        this.page = 0;
+    }
+
+    public int pageCount() {
+        return Math.max(1, (books.size() + pageSize - 1) / pageSize);
+    }
+
+    public boolean next() {
+        return jump(page + 2);
+    }
+
+    public boolean previous() {
+        return jump(page);
+    }
+
+    // Moves to a 1-based page number, returns false if it is out of range
+    public boolean jump(int number) {
+        if (number < 1 || number > pageCount()) {
+            return false;
+        }
+        page = number - 1;
+        return true;
+    }
+
+    public void print(PrintStream out) {
+        buffer.setLength(0);
+        // Table header:
+        buffer.append("╔════╦════════════════════════════════╦════════════════════════════╦════════════════╦════════════════════╗").append(NEWLINE);
+        formatter.format("║ %-2s ║ %30s ║ %26s ║ %14s ║ %18s ║%n", " ", "TITLE", "AUTHOR", "YEAR", "ISBN");
+        buffer.append("╠════╬════════════════════════════════╬════════════════════════════╬════════════════╬════════════════════╣").append(NEWLINE);
+
+        // Table content:
+        int from = page * pageSize;
+        int to = Math.min(books.size(), from + pageSize);
+        for (int i = from; i < to; i++) {
+            Book book = books.get(i);
+            formatter.format("║ %s ║ %30s ║ %26s ║ %14d ║ %18s ║%n", Integer.toString(i + 1) + ".", book.getTitle(), book.getAuthor(), book.getYear(), book.getISBN());
+        }
+        buffer.append("╚════╩════════════════════════════════╩════════════════════════════╩════════════════╩════════════════════╝").append(NEWLINE);
+        formatter.format("Page %d of %d (%d books)%n", page + 1, pageCount(), books.size());
+        out.print(buffer);
+        out.flush();
+    }
+}
@@ -0,0 +1,53 @@
+package lms;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Full scans over slot ids, list positions or arrays, split across the ForkJoinPool the caller runs in (the
+// common pool unless a task was submitted elsewhere). Below THRESHOLD elements, or on a single core, the
+// splitting costs more than it saves, so the work stays on the calling thread. Every helper keeps encounter
+// order, so results come back in the same order a sequential loop would produce.
+final class ParallelScan {
+    static final int THRESHOLD = Integer.getInteger("lms.parallelThreshold", 1 << 14);   // -Dlms.parallelThreshold=N
+    static final int CHUNK = 1 << 16;                                      // Slots decoded per batch during index builds
+    private static final boolean MULTICORE = Runtime.getRuntime().availableProcessors() > 1;
+
+    private ParallelScan() {
+    }
+
+    static boolean isParallel(long size) {
+        return MULTICORE && size >= THRESHOLD;
+    }
+
+    static IntStream range(int from, int to) {
+        IntStream range = IntStream.range(from, to);
+        return isParallel((long) to - from) ? range.parallel() : range;
+    }
+
+    static <T> Stream<T> stream(List<T> list) {
+        return isParallel(list.size()) ? list.parallelStream() : list.stream();
+    }
+
+    // Values in [from, to) accepted by the predicate, ascending; the predicate may only read shared state
+    static int[] select(int from, int to, IntPredicate accept) {
+        return range(from, to).filter(accept).toArray();
+    }
+
+    // Stable sort; Arrays.parallelSort is a stable merge sort like Arrays.sort, only split across threads
+    static <T> void sort(T[] array, Comparator<? super T> comparator) {
+        if (isParallel(array.length)) {
+            Arrays.parallelSort(array, comparator);
+        } else {
+            Arrays.sort(array, comparator);
+        }
+    }
+
+    // Books in slots [from, to), null for removed slots; mapped records are decoded in parallel
+    static Book[] books(Catalog catalog, int from, int to) {
+        return range(from, to).mapToObj(catalog::get).toArray(Book[]::new);
+    }
+}
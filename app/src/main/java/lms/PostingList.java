@@ -0,0 +1,139 @@
+package lms;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+// Sorted list of catalog slot ids; ids are handed out in increasing order so adds are appends. A removal only
+// marks its position dead, and the array is compacted once a quarter of it is dead, so removing from a long
+// list costs a binary search rather than a shift of every later id. Reads skip dead positions.
+class PostingList {
+    private int[] ids = new int[4];
+    private int size;                                                      // Positions in use, live or dead
+    private BitSet dead;                                                   // Dead positions, null if none
+    private int deadCount;
+
+    public void add(int id) {
+        if (size > 0 && ids[size - 1] >= id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                if (isDead(pos)) {
+                    dead.clear(pos);
+                    deadCount--;
+                }
+                return;
+            }
+            compact();                                                     // Positions are about to shift
+            insertAt(-Arrays.binarySearch(ids, 0, size, id) - 1, id);
+            return;
+        }
+        insertAt(size, id);
+    }
+
+    public void remove(int id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos < 0 || isDead(pos)) {
+            return;
+        }
+        if (dead == null) {
+            dead = new BitSet();
+        }
+        dead.set(pos);
+        deadCount++;
+        if (4 * deadCount > size) {
+            compact();
+        }
+    }
+
+    public boolean contains(int id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        return pos >= 0 && !isDead(pos);
+    }
+
+    // Live ids
+    public int size() {
+        return size - deadCount;
+    }
+
+    public boolean isEmpty() {
+        return size == deadCount;
+    }
+
+    // Passes every live id in ascending order
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            if (!isDead(i)) {
+                action.accept(ids[i]);
+            }
+        }
+    }
+
+    public int[] toArray() {
+        if (deadCount == 0) {
+            return Arrays.copyOf(ids, size);
+        }
+        int[] live = new int[size()];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!isDead(i)) {
+                live[count++] = ids[i];
+            }
+        }
+        return live;
+    }
+
+    // Ids present in both lists, smaller list drives the merge
+    public PostingList intersect(PostingList other) {
+        PostingList small = size() <= other.size() ? this : other;
+        PostingList large = small == this ? other : this;
+        PostingList result = new PostingList();
+        int from = 0;
+        for (int i = 0; i < small.size && from < large.size; i++) {
+            if (small.isDead(i)) {
+                continue;
+            }
+            int pos = Arrays.binarySearch(large.ids, from, large.size, small.ids[i]);
+            if (pos >= 0) {
+                if (!large.isDead(pos)) {
+                    result.insertAt(result.size, small.ids[i]);
+                }
+                from = pos + 1;
+            } else {
+                from = -pos - 1;
+            }
+        }
+        return result;
+    }
+
+    private boolean isDead(int pos) {
+        return dead != null && dead.get(pos);
+    }
+
+    // Drops the dead positions; runs on writes only, so readers sharing the index never see it move
+    private void compact() {
+        if (deadCount == 0) {
+            return;
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!dead.get(i)) {
+                ids[count++] = ids[i];
+            }
+        }
+        size = count;
+        dead = null;
+        deadCount = 0;
+        if (ids.length > 16 && size < ids.length / 4) {
+            ids = Arrays.copyOf(ids, Math.max(4, 2 * size));
+        }
+    }
+
+    private void insertAt(int pos, int id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        ids[pos] = id;
+        size++;
+    }
+}
@@ -0,0 +1,91 @@
+package lms;
+
+import java.util.*;
+
+// What a list of books was asked for: a search term (blank = every book) or an Expression, filters that must
+// all match, and a sort order (null = relevance for searches, insertion order otherwise). Terms and filters are
+// normalized the way the indexes compare them, so equivalent queries are equal and share a QueryCache entry.
+final class Query {
+    static final Query ALL = new Query("", null, new String[0], null);
+
+    final String term;                                                     // SearchIndex.normalize form, "" for every book
+    final Expression where;                                                // Replaces the term when set
+    final SortOrder order;                                                 // May be null
+    private final String[] filters;                                        // FacetIndex.fold form, sorted, no duplicates
+
+    private Query(String term, Expression where, String[] filters, SortOrder order) {
+        this.term = term;
+        this.where = where;
+        this.filters = filters;
+        this.order = order;
+    }
+
+    // Any argument may be null or blank to skip that step
+    static Query of(String term, String criteria, SortOrder order) {
+        Query query = new Query(term == null ? "" : SearchIndex.normalize(term), null, ALL.filters, order);
+        return criteria == null || criteria.isBlank() ? query : query.filter(criteria);
+    }
+
+    // The books matching the expression, in its sort order
+    static Query of(Expression where) {
+        return new Query("", where, ALL.filters, where.order);
+    }
+
+    // This query narrowed by one more filter; "All" narrows nothing
+    Query filter(String criteria) {
+        String key = FacetIndex.fold(criteria);
+        if (key.equals(FacetIndex.fold("All"))) {
+            return this;
+        }
+        int pos = Arrays.binarySearch(filters, key);
+        if (pos >= 0) {
+            return this;
+        }
+        String[] narrowed = new String[filters.length + 1];
+        System.arraycopy(filters, 0, narrowed, 0, -pos - 1);
+        narrowed[-pos - 1] = key;
+        System.arraycopy(filters, -pos - 1, narrowed, -pos, filters.length + pos + 1);
+        return new Query(term, where, narrowed, order);
+    }
+
+    // The same books in another order
+    Query sort(SortOrder order) {
+        return new Query(term, where, filters, order);
+    }
+
+    List<String> filters() {
+        return Arrays.asList(filters);
+    }
+
+    // Whether the book passes the expression and every filter (the term is checked separately, see QueryCache)
+    boolean passesFilters(Book book) {
+        if (where != null && !where.matches(book)) {
+            return false;
+        }
+        for (String criteria : filters) {
+            if (!book.matchesFilter(criteria)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Query)) {
+            return false;
+        }
+        Query query = (Query) other;
+        return term.equals(query.term) && Objects.equals(where, query.where) && Arrays.equals(filters, query.filters) && order == query.order;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((term.hashCode() * 31 + Objects.hashCode(where)) * 31 + Arrays.hashCode(filters)) * 31 + Objects.hashCode(order);
+    }
+
+    @Override
+    public String toString() {
+        return (where != null ? "where=" + where : "q=" + term) + " filters=" + Arrays.toString(filters) + " sort=" + order;
+    }
+}
@@ -0,0 +1,280 @@
+package lms;
+
+import java.util.*;
+
+// Result cache for Catalog.query: slot ids of each answer, keyed by the normalized Query and bounded by both an
+// entry count and a memory budget (-Dlms.queryCacheMB=N, 0 disables it).
+//
+// Eviction is W-TinyLFU: new entries wait in a small LRU window; when the window overflows, its oldest entry
+// only displaces the main area's eviction victim if a frequency sketch has seen it asked for more often. The
+// main area is a segmented LRU, so entries hit again since admission are protected from one-off queries.
+//
+// Invalidation is targeted: a result exactly answered by the index holds precisely the books whose title,
+// author or genre contain the term and that pass every filter, so an added or removed book only drops the
+// entries it passes for. Results that fell back to typo-tolerant matching are dropped on any change.
+class QueryCache implements CatalogListener {
+    private static final int ENTRY_OVERHEAD = 96;                          // Approximate bytes per entry besides the ids
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;                       // Of the main area
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Query, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Query, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Query, Entry> protectedArea = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long windowBytes;
+    private long mainBytes;
+    private long protectedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    QueryCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.sketch = new FrequencySketch(Math.max(16, maxEntries));
+    }
+
+    // Cache sized from -Dlms.queryCacheMB (default 64)
+    static QueryCache fromProperties() {
+        long megabytes = Long.getLong("lms.queryCacheMB", 64);
+        return new QueryCache(megabytes <= 0 ? 0 : 4096, megabytes << 20);
+    }
+
+    // Ids of a cached answer, or null; the array must not be modified
+    public synchronized int[] get(Query query) {
+        if (maxEntries == 0) {
+            return null;
+        }
+        sketch.increment(query.hashCode());
+        Entry entry = window.get(query);                                   // Access order moves it to the young end
+        if (entry == null) {
+            entry = protectedArea.get(query);
+        }
+        if (entry == null && (entry = probation.remove(query)) != null) {  // Hit again: promote
+            protectedArea.put(query, entry);
+            protectedBytes += entry.bytes;
+            demoteProtected();
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.ids;
+    }
+
+    // Offers an answer just computed. exact says whether it came from the index's substring match (see above).
+    public synchronized void put(Query query, int[] ids, boolean exact) {
+        Entry entry = new Entry(query, ids, exact);
+        if (maxEntries == 0 || entry.bytes > maxBytes / 4 || window.containsKey(query)
+                || probation.containsKey(query) || protectedArea.containsKey(query)) {
+            return;
+        }
+        window.put(query, entry);
+        windowBytes += entry.bytes;
+        while (!window.isEmpty() && (windowBytes > maxBytes * WINDOW_PERCENT / 100 || window.size() > windowEntries())) {
+            Entry candidate = removeEldest(window);
+            windowBytes -= candidate.bytes;
+            admit(candidate);
+        }
+    }
+
+    // Moves a window entry into the main area if it is asked for more often than what it would displace
+    private void admit(Entry candidate) {
+        int candidateFrequency = sketch.frequency(candidate.query.hashCode());
+        while (mainBytes + candidate.bytes > mainBytes() || probation.size() + protectedArea.size() + 1 > mainEntries()) {
+            LinkedHashMap<Query, Entry> segment = probation.isEmpty() ? protectedArea : probation;
+            if (segment.isEmpty()) {
+                break;
+            }
+            Entry victim = segment.values().iterator().next();
+            if (sketch.frequency(victim.query.hashCode()) >= candidateFrequency) {
+                evictions++;                                               // The candidate loses
+                return;
+            }
+            segment.remove(victim.query);
+            mainBytes -= victim.bytes;
+            if (segment == protectedArea) {
+                protectedBytes -= victim.bytes;
+            }
+            evictions++;
+        }
+        probation.put(candidate.query, candidate);
+        mainBytes += candidate.bytes;
+    }
+
+    // Keeps the protected segment within its share by moving its oldest entries back to probation
+    private void demoteProtected() {
+        long limit = mainBytes() * PROTECTED_PERCENT / 100;
+        while (protectedBytes > limit || protectedArea.size() > mainEntries() * PROTECTED_PERCENT / 100) {
+            Entry entry = removeEldest(protectedArea);
+            protectedBytes -= entry.bytes;
+            probation.put(entry.query, entry);
+        }
+    }
+
+    private int windowEntries() {
+        return Math.max(1, maxEntries * WINDOW_PERCENT / 100);
+    }
+
+    private int mainEntries() {
+        return maxEntries - windowEntries();
+    }
+
+    private long mainBytes() {
+        return maxBytes - maxBytes * WINDOW_PERCENT / 100;
+    }
+
+    private static Entry removeEldest(LinkedHashMap<Query, Entry> segment) {
+        Iterator<Entry> eldest = segment.values().iterator();
+        Entry entry = eldest.next();
+        eldest.remove();
+        return entry;
+    }
+
+    @Override
+    public void bookAdded(int id, Book book) {
+        invalidate(book);
+    }
+
+    @Override
+    public void bookRemoved(int id, Book book) {
+        invalidate(book);
+    }
+
+    // Cached answers are lists of slot ids, which no longer hold
+    @Override
+    public synchronized void slotsCompacted(int from) {
+        invalidations += window.size() + probation.size() + protectedArea.size();
+        window.clear();
+        probation.clear();
+        protectedArea.clear();
+        windowBytes = 0;
+        mainBytes = 0;
+        protectedBytes = 0;
+    }
+
+    // Drops every entry whose answer the book is, or would now be, part of
+    private synchronized void invalidate(Book book) {
+        if (window.isEmpty() && probation.isEmpty() && protectedArea.isEmpty()) {
+            return;
+        }
+        String[] fields = SearchIndex.fields(book);
+        invalidate(window, book, fields);
+        invalidate(probation, book, fields);
+        invalidate(protectedArea, book, fields);
+    }
+
+    private void invalidate(LinkedHashMap<Query, Entry> segment, Book book, String[] fields) {
+        for (Iterator<Entry> it = segment.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (!entry.exact || (SearchIndex.contains(fields, entry.query.term) && entry.query.passesFilters(book))) {
+                it.remove();
+                invalidations++;
+                if (segment == window) {
+                    windowBytes -= entry.bytes;
+                } else {
+                    mainBytes -= entry.bytes;
+                    if (segment == protectedArea) {
+                        protectedBytes -= entry.bytes;
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized long invalidations() {
+        return invalidations;
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedArea.size();
+    }
+
+    public synchronized long bytes() {
+        return windowBytes + mainBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d entries in %d KB, %d evicted, %d invalidated",
+                hits, misses, lookups == 0 ? 0.0 : 100.0 * hits / lookups, size(), bytes() >> 10, evictions, invalidations);
+    }
+
+    private static final class Entry {
+        final Query query;
+        final int[] ids;
+        final boolean exact;
+        final long bytes;
+
+        Entry(Query query, int[] ids, boolean exact) {
+            this.query = query;
+            this.ids = ids;
+            this.exact = exact;
+            this.bytes = ENTRY_OVERHEAD + 4L * ids.length + 2L * query.term.length();
+        }
+    }
+
+    // Count-min sketch of recent query frequencies: four 4-bit counters per query, the smallest one is the
+    // estimate. All counters are halved after every sampleSize increments, so old popularity fades.
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+        private final byte[][] rows;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity * 4 - 1)) << 1;
+            rows = new byte[SEEDS.length][width];
+            mask = width - 1;
+            sampleSize = 10 * capacity;
+        }
+
+        void increment(int hash) {
+            for (int i = 0; i < rows.length; i++) {
+                int slot = index(hash, i);
+                if (rows[i][slot] < 15) {
+                    rows[i][slot]++;
+                }
+            }
+            if (++additions == sampleSize) {
+                for (byte[] row : rows) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < rows.length; i++) {
+                frequency = Math.min(frequency, rows[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            return (int) (h >>> 32) & mask;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package lms;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+// Cost-based planning for Expression queries. Every condition an index can answer is a candidate access path:
+// the ISBN hash, the year range index, the genre/type facets, or the trigram index for title/author/text
+// words; so is intersecting the bitmaps of several exact ones, and a full scan. Each path's size is estimated
+// from the index itself (bitmap and posting list sizes, year counts), and its cost counts the ids it reads
+// plus a much dearer fetch-and-check of every candidate book for the conditions it leaves over. The cheapest
+// path wins; the plan lists all of them for explain output.
+final class QueryPlanner {
+    static final double ID_COST = 1;                                       // Reading one id from an index
+    static final double BOOK_COST = 20;                                    // Fetching (maybe decoding) a book and checking it
+
+    private final Catalog catalog;
+    private final SearchIndex searchIndex;
+    private final FacetIndex facetIndex;
+    private final YearIndex yearIndex;
+
+    QueryPlanner(Catalog catalog, SearchIndex searchIndex, FacetIndex facetIndex, YearIndex yearIndex) {
+        this.catalog = catalog;
+        this.searchIndex = searchIndex;
+        this.facetIndex = facetIndex;
+        this.yearIndex = yearIndex;
+    }
+
+    // Chooses how to answer the expression; order is only shown in the explain output
+    Plan plan(Expression expression, SortOrder order) {
+        int books = catalog.size();
+        List<Access> paths = new ArrayList<>();
+        List<Access> exact = new ArrayList<>();
+        for (Expression.Condition condition : expression.conditions()) {
+            Access access = access(condition);
+            paths.add(access);
+            if (access.exact && access.bitmap != null) {
+                exact.add(access);
+            }
+        }
+        if (exact.size() > 1) {
+            paths.add(intersect(exact, books));
+        }
+        paths.add(new Access(expression.conditions().isEmpty() ? "all books" : "full scan", Collections.emptyList(), true, books,
+                books * ID_COST, null, () -> ParallelScan.select(0, catalog.slotCount(), catalog::isLive)));
+        Access best = null;
+        for (Access access : paths) {
+            access.total = access.cost + (residual(expression, access).isEmpty() ? 0 : access.rows * BOOK_COST);
+            if (best == null || access.total < best.total) {
+                best = access;
+            }
+        }
+        return new Plan(expression, order, best, paths, residual(expression, best));
+    }
+
+    private Access access(Expression.Condition condition) {
+        List<Expression.Condition> covers = Collections.singletonList(condition);
+        switch (condition.field) {
+            case ISBN: {
+                Supplier<IdBitmap> bitmap = () -> {
+                    IdBitmap ids = new IdBitmap();
+                    for (String isbn : condition.values) {
+                        int id = catalog.idOf(isbn);
+                        if (id >= 0) {
+                            ids.add(id);
+                        }
+                    }
+                    return ids;
+                };
+                return new Access("ISBN hash " + condition, covers, true, condition.values.length,
+                        condition.values.length * ID_COST, bitmap, null);
+            }
+            case YEAR: {
+                long rows = 0;
+                long years = 0;
+                for (int i = 0; i < condition.ranges.length; i += 2) {
+                    rows += yearIndex.count(condition.ranges[i], condition.ranges[i + 1]);
+                    years += yearIndex.years(condition.ranges[i], condition.ranges[i + 1]);
+                }
+                Supplier<IdBitmap> bitmap = () -> {
+                    IdBitmap ids = new IdBitmap();
+                    for (int i = 0; i < condition.ranges.length; i += 2) {
+                        ids = ids.or(yearIndex.matching(condition.ranges[i], condition.ranges[i + 1]));
+                    }
+                    return ids;
+                };
+                return new Access("year index " + condition, covers, true, rows, (rows + years) * ID_COST, bitmap, null);
+            }
+            case GENRE: {
+                long rows = 0;
+                for (String value : condition.values) {
+                    rows += facetIndex.count(value);
+                }
+                Supplier<IdBitmap> bitmap = () -> {
+                    IdBitmap ids = new IdBitmap();
+                    for (String value : condition.values) {
+                        ids = ids.or(facetIndex.matching(value));
+                    }
+                    return ids;
+                };
+                return new Access("genre facet " + condition, covers, true, rows, rows * ID_COST, bitmap, null);
+            }
+            default: {
+                long rows = 0;
+                for (String value : condition.values) {
+                    rows += searchIndex.estimate(value);
+                }
+                rows = Math.min(rows, catalog.size());
+                Supplier<int[]> ids = () -> {
+                    if (condition.values.length == 1) {
+                        return searchIndex.candidates(condition.values[0]);
+                    }
+                    BitSet union = new BitSet();
+                    for (String value : condition.values) {
+                        for (int id : searchIndex.candidates(value)) {
+                            union.set(id);
+                        }
+                    }
+                    return union.stream().toArray();
+                };
+                // Candidates only share trigrams with the words, so the condition itself is still checked
+                return new Access("trigram index " + condition, Collections.emptyList(), false, rows, rows * ID_COST, null, ids);
+            }
+        }
+    }
+
+    // ANDs the bitmaps of every exact path, its size estimated as if the conditions were independent
+    private Access intersect(List<Access> exact, int books) {
+        List<Expression.Condition> covers = new ArrayList<>();
+        StringJoiner name = new StringJoiner(" & ", "intersect ", "");
+        double rows = books;
+        double cost = 0;
+        for (Access access : exact) {
+            covers.addAll(access.covers);
+            name.add(access.covers.get(0).toString());
+            rows = books == 0 ? 0 : Math.min(rows * access.rows / books, access.rows);
+            cost += access.cost + access.rows * ID_COST;                   // Build each bitmap, then AND them
+        }
+        Supplier<IdBitmap> bitmap = () -> {
+            IdBitmap result = null;
+            for (Access access : exact) {
+                result = result == null ? access.bitmap.get() : result.and(access.bitmap.get());
+            }
+            return result;
+        };
+        return new Access(name.toString(), covers, true, (long) Math.ceil(rows), cost, bitmap, null);
+    }
+
+    // Conditions the access path does not answer by itself
+    private static List<Expression.Condition> residual(Expression expression, Access access) {
+        List<Expression.Condition> residual = new ArrayList<>(expression.conditions());
+        residual.removeAll(access.covers);
+        return residual;
+    }
+
+    // One way of finding candidate books
+    private static final class Access {
+        final String name;
+        final List<Expression.Condition> covers;                           // Conditions its ids satisfy exactly
+        final boolean exact;
+        final long rows;                                                   // Estimated ids read
+        final double cost;                                                 // Of reading them
+        final Supplier<IdBitmap> bitmap;                                   // One of these two produces the ids
+        final Supplier<int[]> ids;
+        double total;                                                      // Cost including the residual checks
+
+        Access(String name, List<Expression.Condition> covers, boolean exact, long rows, double cost, Supplier<IdBitmap> bitmap,
+                Supplier<int[]> ids) {
+            this.name = name;
+            this.covers = covers;
+            this.exact = exact;
+            this.rows = rows;
+            this.cost = cost;
+            this.bitmap = bitmap;
+            this.ids = ids;
+        }
+
+        int[] ids() {
+            return bitmap != null ? bitmap.get().toArray() : ids.get();
+        }
+    }
+
+    // The chosen access path and the conditions left to check on each candidate
+    final class Plan {
+        private final Expression expression;
+        private final SortOrder order;
+        private final Access access;
+        private final List<Access> considered;
+        private final List<Expression.Condition> residual;
+
+        private Plan(Expression expression, SortOrder order, Access access, List<Access> considered, List<Expression.Condition> residual) {
+            this.expression = expression;
+            this.order = order;
+            this.access = access;
+            this.considered = considered;
+            this.residual = residual;
+        }
+
+        // Slot ids of the matching books, ascending (insertion order)
+        int[] execute() {
+            int[] candidates = access.ids();
+            if (residual.isEmpty()) {
+                return candidates;
+            }
+            return ParallelScan.range(0, candidates.length).map(i -> candidates[i]).filter(id -> {
+                if (!catalog.isLive(id)) {
+                    return false;
+                }
+                for (Expression.Condition condition : residual) {
+                    if (!condition.matches(catalog, id)) {
+                        return false;
+                    }
+                }
+                return true;
+            }).toArray();
+        }
+
+        // One line: the path taken and what is checked after it
+        String summary() {
+            StringBuilder out = new StringBuilder(access.name);
+            if (!residual.isEmpty()) {
+                out.append(", then check");
+                for (Expression.Condition condition : residual) {
+                    out.append(' ').append(condition);
+                }
+            }
+            if (order != null) {
+                out.append(", sort by ").append(order.getLabel());
+            }
+            return out.toString();
+        }
+
+        // The summary followed by every access path considered, with its estimated size and cost
+        String explain() {
+            StringBuilder out = new StringBuilder();
+            out.append("Query: ").append(expression.conditions().isEmpty() ? "(all books)" : expression.toString()).append('\n');
+            out.append("Plan: ").append(summary()).append('\n');
+            out.append("Considered:\n");
+            for (Access path : considered) {
+                out.append(String.format(Locale.ROOT, "%s %-44s ~%,d books  cost %,.0f%n", path == access ? "*" : " ", path.name,
+                        path.rows, path.total));
+            }
+            return out.toString();
+        }
+
+        @Override
+        public String toString() {
+            return explain();
+        }
+    }
+}
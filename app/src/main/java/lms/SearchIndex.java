@@ -0,0 +1,408 @@
+package lms;
+
+import java.util.*;
+
+// Inverted index over normalized title/author/genre tokens, with trigrams so substring queries still hit the
+// index and a trie of the tokens for type-ahead completion and typo-tolerant matching.
+// Built on the first search so loading a save file does not pay for it, then maintained incrementally.
+class SearchIndex implements CatalogListener {
+    private static final int GRAM = 3;                                     // n-gram length for substring lookups
+    private static final int MAX_EDITS = 2;                                // Typos tolerated in a long query word
+    private static final int MAX_EXPANSIONS = 4096;                        // Tokens a misspelled word may stand for
+    private static final int[] FIELD_WEIGHTS = {4, 2, 1};                  // Fuzzy hits: title, author, genre
+    private static final Comparator<Hit> BEST_FIRST = Comparator.comparingInt((Hit hit) -> -hit.score).thenComparing(hit -> hit.title);
+    private final Catalog catalog;
+    private final Map<String, PostingList> tokens = new HashMap<>();       // Whole word -> slot ids
+    private final Map<String, PostingList> grams = new HashMap<>();        // Trigram -> slot ids
+    private TermTrie trie = new TermTrie();                                // Tokens weighted by their book count
+    private boolean built;
+
+    public SearchIndex(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public void bookAdded(int id, Book book) {
+        if (!built) {
+            return;
+        }
+        index(id, fields(book));
+    }
+
+    @Override
+    public void bookRemoved(int id, Book book) {
+        if (!built) {
+            return;
+        }
+        for (String text : fields(book)) {
+            for (String token : text.split(" ")) {
+                PostingList list = tokens.get(token);
+                if (list != null) {
+                    list.remove(id);
+                    if (list.isEmpty()) {
+                        tokens.remove(token);
+                        trie.remove(token);
+                    } else {
+                        trie.put(token, list.size());
+                    }
+                }
+            }
+            for (String gram : grams(text)) {
+                remove(grams, gram, id);
+            }
+        }
+    }
+
+    // Slot ids changed, so an index already built is built again from the books; one not built yet stays so
+    @Override
+    public void slotsCompacted(int from) {
+        if (!built) {
+            return;
+        }
+        tokens.clear();
+        grams.clear();
+        trie = new TermTrie();
+        built = false;
+        ensureBuilt();
+    }
+
+    // Distinct words indexed; a plain field read, so a metrics thread may call it at any time
+    public int terms() {
+        return trie.size();
+    }
+
+    // Returns books whose title, author or genre contains the term, best matches first. When nothing does, falls
+    // back to books matching each word of the term within a few typos (see fuzzyHits).
+    public List<Book> search(String term) {
+        return find(term).books;
+    }
+
+    // The same, also telling whether the books came from the typo-tolerant fallback
+    Result find(String term) {
+        String query = normalize(term);
+        if (query.isEmpty()) {
+            return new Result(catalog.view(new int[0], 0), false);
+        }
+        ensureBuilt();
+
+        int[] candidates = query.length() >= GRAM ? gramCandidates(query) : tokenCandidates(query);
+        Hit[] hits = ParallelScan.range(0, candidates.length).mapToObj(i -> hit(candidates[i], query))   // Verify and score
+                .filter(Objects::nonNull).toArray(Hit[]::new);
+        boolean fuzzy = hits.length == 0;
+        if (fuzzy) {
+            hits = fuzzyHits(query.split(" "));
+        }
+        ParallelScan.sort(hits, BEST_FIRST);
+        int[] ids = new int[hits.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = hits[i].id;
+        }
+        return new Result(catalog.view(ids, ids.length), fuzzy);
+    }
+
+    // Books found for a term. When fuzzy, they are not the books containing it (there are none), and another book
+    // may change the answer without containing the term either, even when no book matched at all.
+    static final class Result {
+        final List<Book> books;
+        final boolean fuzzy;
+
+        Result(List<Book> books, boolean fuzzy) {
+            this.books = books;
+            this.fuzzy = fuzzy;
+        }
+    }
+
+    // Upper bound on the books containing the normalized text somewhere in title, author or genre: the shortest
+    // posting list among its trigrams. Text shorter than a trigram is only bounded by the catalog size.
+    int estimate(String text) {
+        ensureBuilt();
+        if (text.length() < GRAM) {
+            return catalog.size();
+        }
+        int bound = Integer.MAX_VALUE;
+        for (String gram : grams(text)) {
+            PostingList list = grams.get(gram);
+            bound = Math.min(bound, list == null ? 0 : list.size());
+        }
+        return bound;
+    }
+
+    // Ids, ascending, of books that may contain the normalized text in title, author or genre; a superset that
+    // still has to be checked against the books
+    int[] candidates(String text) {
+        ensureBuilt();
+        return text.length() >= GRAM ? gramCandidates(text) : tokenCandidates(text);
+    }
+
+    void ensureBuilt() {
+        if (built) {
+            return;
+        }
+        int limit = catalog.slotCount();
+        for (int start = 0; start < limit; start += ParallelScan.CHUNK) {
+            String[][] chunk = ParallelScan.range(start, Math.min(limit, start + ParallelScan.CHUNK))
+                    .mapToObj(id -> catalog.isLive(id) ? fields(catalog, id) : null).toArray(String[][]::new);
+            for (int i = 0; i < chunk.length; i++) {
+                if (chunk[i] != null) {
+                    index(start + i, chunk[i]);
+                }
+            }
+        }
+        built = true;
+    }
+
+    // Type-ahead: up to limit completions of the term's last word, behind the words typed before it. Words
+    // starting with it exactly come first, most common first; then words starting within its typo budget.
+    public List<String> suggest(String term, int limit) {
+        String query = normalize(term);
+        List<String> suggestions = new ArrayList<>();
+        if (query.isEmpty() || limit <= 0) {
+            return suggestions;
+        }
+        ensureBuilt();
+        int split = query.lastIndexOf(' ') + 1;
+        String typed = query.substring(0, split);
+        String last = query.substring(split);
+        List<String> words = trie.complete(last, limit);
+        if (words.size() < limit && maxEdits(last) > 0) {
+            List<Map.Entry<String, Integer>> close = new ArrayList<>(trie.fuzzy(last, maxEdits(last), true, MAX_EXPANSIONS).entrySet());
+            close.sort(Comparator.comparingInt((Map.Entry<String, Integer> e) -> e.getValue())
+                    .thenComparingInt(e -> -trie.weight(e.getKey())).thenComparing(Map.Entry::getKey));
+            for (int i = 0; i < close.size() && words.size() < limit; i++) {
+                if (!words.contains(close.get(i).getKey())) {
+                    words.add(close.get(i).getKey());
+                }
+            }
+        }
+        for (String word : words) {
+            suggestions.add(typed + word);
+        }
+        return suggestions;
+    }
+
+    // Edits tolerated in a query word: none for very short words, where almost anything would be one edit away
+    static int maxEdits(String word) {
+        return word.length() < 3 ? 0 : word.length() < 6 ? 1 : MAX_EDITS;
+    }
+
+    // Books containing, for every query word, a token within the word's edit budget (the last word may also be
+    // the start of a token, as it is while still being typed). Scored per word on the closest token found,
+    // weighted by field, so near-exact title matches rank first.
+    private Hit[] fuzzyHits(String[] words) {
+        List<Map<String, Integer>> expansions = new ArrayList<>();
+        BitSet candidates = null;
+        for (int w = 0; w < words.length; w++) {
+            Map<String, Integer> close = trie.fuzzy(words[w], maxEdits(words[w]), w == words.length - 1, MAX_EXPANSIONS);
+            BitSet ids = new BitSet();
+            for (String token : close.keySet()) {
+                PostingList list = tokens.get(token);
+                list.forEach(ids::set);
+            }
+            if (candidates == null) {
+                candidates = ids;
+            } else {
+                candidates.and(ids);
+            }
+            if (candidates.isEmpty()) {
+                return new Hit[0];
+            }
+            expansions.add(close);
+        }
+        int[] ids = candidates.stream().toArray();
+        return ParallelScan.range(0, ids.length).mapToObj(i -> fuzzyHit(ids[i], expansions))
+                .filter(Objects::nonNull).toArray(Hit[]::new);
+    }
+
+    private Hit fuzzyHit(int id, List<Map<String, Integer>> expansions) {
+        if (!catalog.isLive(id)) {
+            return null;
+        }
+        String[] fields = fields(catalog, id);
+        int score = 0;
+        for (Map<String, Integer> close : expansions) {
+            int best = 0;
+            for (int f = 0; f < fields.length; f++) {
+                for (String token : fields[f].split(" ")) {
+                    Integer distance = close.get(token);
+                    if (distance != null) {
+                        best = Math.max(best, FIELD_WEIGHTS[f] * (MAX_EDITS + 1 - distance));
+                    }
+                }
+            }
+            if (best == 0) {
+                return null;
+            }
+            score += best;
+        }
+        return new Hit(id, score, catalog.title(id));
+    }
+
+    // Null unless the book in the slot still exists and matches; reads the fields without decoding the book
+    private Hit hit(int id, String query) {
+        if (!catalog.isLive(id)) {
+            return null;
+        }
+        String title = catalog.title(id);
+        int score = score(new String[] {normalize(title), normalize(catalog.author(id)), normalize(catalog.genre(id))}, query);
+        return score > 0 ? new Hit(id, score, title) : null;
+    }
+
+    // Intersects the posting lists of every trigram in the query, rarest first
+    private int[] gramCandidates(String query) {
+        List<PostingList> lists = new ArrayList<>();
+        for (String gram : grams(query)) {
+            PostingList list = grams.get(gram);
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        PostingList result = lists.get(0);
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result = result.intersect(lists.get(i));
+        }
+        return result.toArray();
+    }
+
+    // Queries shorter than a trigram are matched against the token dictionary instead
+    private int[] tokenCandidates(String query) {
+        BitSet ids = new BitSet();
+        for (Map.Entry<String, PostingList> entry : tokens.entrySet()) {
+            if (entry.getKey().contains(query)) {
+                PostingList list = entry.getValue();
+                list.forEach(ids::set);
+            }
+        }
+        return ids.stream().toArray();
+    }
+
+    // Title hits outrank author hits, which outrank genre hits; whole-word and prefix hits outrank plain substrings
+    private static int score(String[] fields, String query) {
+        int score = 0;
+        String title = fields[0];
+        if (title.contains(query)) {
+            score += 8;
+            if (title.equals(query)) {
+                score += 8;
+            } else if (title.startsWith(query)) {
+                score += 4;
+            }
+            if (containsWord(title, query)) {
+                score += 2;
+            }
+        }
+        String author = fields[1];
+        if (author.contains(query)) {
+            score += 4;
+            if (containsWord(author, query)) {
+                score += 1;
+            }
+        }
+        String genre = fields[2];
+        if (genre.contains(query)) {
+            score += 2;
+            if (containsWord(genre, query)) {
+                score += 1;
+            }
+        }
+        return score;
+    }
+
+    private static boolean containsWord(String text, String query) {
+        int from = 0;
+        int pos;
+        while ((pos = text.indexOf(query, from)) >= 0) {
+            int end = pos + query.length();
+            if ((pos == 0 || text.charAt(pos - 1) == ' ') && (end == text.length() || text.charAt(end) == ' ')) {
+                return true;
+            }
+            from = pos + 1;
+        }
+        return false;
+    }
+
+    private void index(int id, String[] fields) {
+        for (String text : fields) {
+            for (String token : text.split(" ")) {
+                if (!token.isEmpty()) {
+                    PostingList list = tokens.computeIfAbsent(token, k -> new PostingList());
+                    list.add(id);
+                    trie.put(token, list.size());
+                }
+            }
+            for (String gram : grams(text)) {
+                grams.computeIfAbsent(gram, k -> new PostingList()).add(id);
+            }
+        }
+    }
+
+    // Normalized title, author and genre, in FIELD_WEIGHTS order
+    static String[] fields(Book book) {
+        return new String[] {normalize(book.getTitle()), normalize(book.getAuthor()), normalize(book.getGenre())};
+    }
+
+    // The same for a live slot, read field by field
+    static String[] fields(Catalog catalog, int id) {
+        return new String[] {normalize(catalog.title(id)), normalize(catalog.author(id)), normalize(catalog.genre(id))};
+    }
+
+    // Whether a normalized query is a substring of any of the fields, i.e. the book is an exact (non-fuzzy) hit
+    static boolean contains(String[] fields, String query) {
+        for (String field : fields) {
+            if (field.contains(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void remove(Map<String, PostingList> index, String key, int id) {
+        PostingList list = index.get(key);
+        if (list != null) {
+            list.remove(id);
+            if (list.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            result.add(text.substring(i, i + GRAM));
+        }
+        return result;
+    }
+
+    // Lower-cases letters/digits and collapses everything else to single spaces
+    static String normalize(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && out.length() > 0) {
+                    out.append(' ');
+                }
+                out.append(Character.toLowerCase(c));
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return out.toString();
+    }
+
+    private static class Hit {
+        final int id;
+        final int score;
+        final String title;
+
+        Hit(int id, int score, String title) {
+            this.id = id;
+            this.score = score;
+            this.title = title;
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package lms;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Save file split into segments of consecutive catalog slots. Each segment is a complete CatalogFile of its own
+// (streamed or mapped like a whole save file) and the save file itself becomes a small manifest listing them:
+//
+//   manifest : magic "LMSM" (int) | version (short) | flags (short) | generation (long) | segment count (int)
+//              | per segment: record count (int) | file name (string, as in CatalogFile) | CRC32 of all the above (int)
+//
+// Adds and removes mark the segment holding the slot dirty, and a save rewrites only dirty segments, under new
+// file names, before the manifest is replaced by an atomic rename. Until then the previous manifest and every
+// file it lists stay as they were, so a crash during a save leaves the last complete save readable. Segments
+// are written Deflate-compressed unless they are to be memory-mapped.
+final class SegmentedSave implements CatalogListener {
+    static final int MAGIC = 0x4C4D534D;                                   // "LMSM"
+    static final short VERSION = 1;
+    static final int SEGMENT_SLOTS = 1 << 14;                              // Catalog slots per segment
+
+    private final Path saveFile;
+    private final boolean compress;
+    private final List<Segment> segments = new ArrayList<>();              // In slot order
+    private long generation;                                               // Of the newest manifest read or written
+    private int slots;                                                     // End of the last segment
+    private boolean manifest;                                              // The save file is a manifest
+    private Catalog tracked;
+    private int pending;                                                   // Saves captured and not yet written
+    private volatile Changes latest;                                       // Most recently captured save
+
+    private SegmentedSave(Path saveFile, boolean compress) {
+        this.saveFile = saveFile;
+        this.compress = compress;
+    }
+
+    // Reads the manifest if the save file is one. Any other save file (or none) starts out with no segments, and
+    // the first save writes every book. Segments written from then on are compressed if asked to.
+    static SegmentedSave open(Path saveFile, boolean compress) throws IOException {
+        SegmentedSave save = new SegmentedSave(saveFile, compress);
+        if (!isManifest(saveFile)) {
+            return save;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(saveFile));
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, data.limit() - 4);
+        if (data.limit() < 24 || (int) crc.getValue() != data.getInt(data.limit() - 4)) {
+            throw new IOException(saveFile + " has a corrupt segment manifest");
+        }
+        data.position(4);
+        short version = data.getShort();
+        if (version > VERSION) {
+            throw new IOException("Unsupported manifest version " + version);
+        }
+        data.getShort();
+        save.generation = data.getLong();
+        int count = data.getInt();
+        for (int i = 0; i < count; i++) {
+            Segment segment = new Segment();
+            segment.count = data.getInt();
+            segment.file = CatalogFile.getString(data);
+            save.segments.add(segment);
+        }
+        save.manifest = true;
+        return save;
+    }
+
+    static boolean isManifest(Path saveFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(saveFile, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Short reads are possible in theory
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    // Whether the save file is a manifest, i.e. the books are in the segment files
+    boolean isSegmented() {
+        return manifest;
+    }
+
+    // Segment files listed by the manifest, in slot order
+    List<Path> files() {
+        List<Path> files = new ArrayList<>();
+        for (Segment segment : segments) {
+            files.add(saveFile.resolveSibling(segment.file));
+        }
+        return files;
+    }
+
+    // Records the manifest's segments as loaded in order, each ending at the given slot. A segment that lost
+    // books on the way (skipped as invalid) no longer matches its file, so the next save rewrites it.
+    synchronized void loaded(int segment, int endSlot, boolean complete) {
+        Segment loaded = segments.get(segment);
+        loaded.start = segment == 0 ? 0 : segments.get(segment - 1).end;
+        loaded.end = endSlot;
+        loaded.dirty = !complete;
+        slots = endSlot;
+    }
+
+    // Starts following the catalog's changes. Slots beyond the loaded segments (a single-file save, replayed
+    // journal entries) go into new segments that the next save writes.
+    synchronized void track(Catalog catalog) {
+        cover(catalog.slotCount());
+        if (tracked != catalog) {
+            catalog.addListener(this);
+            tracked = catalog;
+        }
+    }
+
+    @Override
+    public synchronized void bookAdded(int id, Book book) {
+        cover(id + 1);
+        segment(id).dirty = true;
+    }
+
+    @Override
+    public synchronized void bookRemoved(int id, Book book) {
+        segment(id).dirty = true;
+    }
+
+    // A record the catalog dropped while loading no longer matches its segment file, so the next save rewrites it
+    @Override
+    public synchronized void recordDropped(int id) {
+        if (id < slots) {
+            segment(id).dirty = true;
+        }
+    }
+
+    // Lays the segments out again from the one holding the first moved slot, every one of them now dirty. Empty
+    // segments left at the end are dropped, unless a save captured earlier still counts on their positions.
+    @Override
+    public synchronized void slotsCompacted(int from) {
+        if (segments.isEmpty()) {
+            return;
+        }
+        int end = tracked.slotCount();
+        int first = index(from);
+        int start = segments.get(first).start;
+        for (int i = first; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            segment.start = start;
+            segment.end = Math.min(end, start + SEGMENT_SLOTS);
+            segment.dirty = true;
+            start = segment.end;
+        }
+        slots = start;
+        cover(end);
+        while (pending == 0 && segments.size() > 1 && segments.get(segments.size() - 1).start == end) {
+            segments.remove(segments.size() - 1);
+        }
+    }
+
+    // Segments a save would rewrite right now
+    synchronized int dirtySegments() {
+        int dirty = 0;
+        for (Segment segment : segments) {
+            dirty += segment.needsWrite() ? 1 : 0;
+        }
+        return dirty;
+    }
+
+    // Captures what a save has to write, together with the snapshot to write it from. Call it on the thread that
+    // changes the catalog, so no change can fall between the snapshot and the dirty marks it clears.
+    synchronized Changes changes(Catalog.Snapshot snapshot) {
+        int[] starts = new int[segments.size()];
+        int[] ends = new int[segments.size()];
+        boolean[] dirty = new boolean[segments.size()];
+        for (int i = 0; i < starts.length; i++) {
+            Segment segment = segments.get(i);
+            starts[i] = segment.start;
+            ends[i] = segment.end;
+            dirty[i] = segment.needsWrite();
+            segment.dirty = false;
+        }
+        pending++;
+        return latest = new Changes(snapshot, starts, ends, dirty);
+    }
+
+    // The save captured last, whether written yet or not; null before the first
+    Changes latest() {
+        return latest;
+    }
+
+    // Writes the changed segments and publishes a new manifest, returns the number of books written. May run on
+    // another thread than changes(), but saves must be written one at a time, in the order they were captured.
+    int write(Changes changes) throws IOException {
+        try {
+            return publish(changes);
+        } finally {
+            synchronized (this) {
+                pending--;
+            }
+        }
+    }
+
+    private int publish(Changes changes) throws IOException {
+        List<Integer> indexes = new ArrayList<>();
+        long next;
+        synchronized (this) {
+            for (int i = 0; i < changes.starts.length; i++) {
+                Segment segment = segments.get(i);
+                if (changes.dirty[i] || segment.stale || segment.file == null) {   // Also redoes what a failed save left
+                    indexes.add(i);
+                }
+            }
+            if (indexes.isEmpty() && manifest) {
+                changes.finish(null);
+                return 0;
+            }
+            next = ++generation;
+        }
+        int total = 0;
+        for (int i : indexes) {
+            total += changes.ends[i] - changes.starts[i];
+        }
+        changes.start(total);
+        String[] files = new String[indexes.size()];
+        int[] counts = new int[indexes.size()];
+        int written = 0;
+        try {
+            for (int k = 0; k < files.length; k++) {
+                int i = indexes.get(k);
+                files[k] = segmentName(i, next);
+                Iterable<Book> books = range(changes, changes.starts[i], changes.ends[i]);
+                Path file = saveFile.resolveSibling(files[k]);
+                counts[k] = compress ? CatalogFile.writeCompressed(books, file) : CatalogFile.write(books, file);
+                written += counts[k];
+            }
+            syncDirectory();
+            List<Segment> published = new ArrayList<>();
+            synchronized (this) {
+                for (int i = 0; i < changes.starts.length; i++) {
+                    Segment copy = new Segment();
+                    copy.file = segments.get(i).file;
+                    copy.count = segments.get(i).count;
+                    published.add(copy);
+                }
+            }
+            for (int k = 0; k < files.length; k++) {
+                published.get(indexes.get(k)).file = files[k];
+                published.get(indexes.get(k)).count = counts[k];
+            }
+            writeManifest(published, next);
+            synchronized (this) {
+                for (int k = 0; k < files.length; k++) {
+                    Segment segment = segments.get(indexes.get(k));
+                    segment.file = files[k];
+                    segment.count = counts[k];
+                    segment.stale = false;
+                }
+                manifest = true;
+            }
+            deleteUnlisted(published);
+            changes.finish(null);
+            return written;
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                for (int i : indexes) {
+                    segments.get(i).stale = true;                          // Its file no longer matches the catalog
+                }
+            }
+            changes.finish(e.getMessage() != null ? e.getMessage() : e.toString());
+            throw e;
+        }
+    }
+
+    // Live books of the snapshot in slots [start, end), counting the slots passed towards the save's progress
+    private static Iterable<Book> range(Changes changes, int start, int end) {
+        Catalog.Snapshot snapshot = changes.snapshot;
+        return () -> new Iterator<Book>() {
+            private final int base = changes.done;
+            private int id = advance(start);
+
+            private int advance(int from) {
+                while (from < end && !snapshot.isLive(from)) {
+                    from++;
+                }
+                changes.done = base + (from - start);
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return id < end;
+            }
+
+            @Override
+            public Book next() {
+                if (id >= end) {
+                    throw new NoSuchElementException();
+                }
+                Book book = snapshot.get(id);
+                id = advance(id + 1);
+                return book;
+            }
+        };
+    }
+
+    // Called with the lock held. Extends the segments to cover slots up to end, filling the last one first.
+    private void cover(int end) {
+        while (slots < end) {
+            Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (tail == null || tail.end - tail.start >= SEGMENT_SLOTS) {
+                tail = new Segment();
+                tail.start = slots;
+                tail.end = slots;
+                segments.add(tail);
+            }
+            tail.end = Math.min(end, tail.start + SEGMENT_SLOTS);
+            tail.dirty = true;
+            slots = tail.end;
+        }
+    }
+
+    // Called with the lock held
+    private Segment segment(int id) {
+        return segments.get(index(id));
+    }
+
+    private int index(int id) {
+        int low = 0, high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).start <= id) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void writeManifest(List<Segment> published, long next) throws IOException {
+        int size = 24;
+        byte[][] names = new byte[published.size()][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = published.get(i).file.getBytes(StandardCharsets.UTF_8);
+            size += 4 + 2 + names[i].length;
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(next).putInt(names.length);
+        for (int i = 0; i < names.length; i++) {
+            data.putInt(published.get(i).count).putShort((short) names[i].length).put(names[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, data.position());
+        data.putInt((int) crc.getValue()).flip();
+
+        Path temp = saveFile.resolveSibling(saveFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);                                           // Contents before the rename, as in CatalogFile
+        }
+        Files.move(temp, saveFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    // Removes segment files the new manifest no longer lists: superseded versions and leftovers of failed saves.
+    // A file that cannot be deleted yet (still mapped, on some systems) is retried after the next save.
+    private void deleteUnlisted(List<Segment> published) throws IOException {
+        Set<String> listed = new HashSet<>();
+        for (Segment segment : published) {
+            listed.add(segment.file);
+        }
+        Path dir = saveFile.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, saveFile.getFileName() + ".*.seg")) {
+            for (Path file : files) {
+                if (!listed.contains(file.getFileName().toString())) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // Left for the next save
+                    }
+                }
+            }
+        }
+    }
+
+    // Makes the renames durable; not every platform can open a directory, and there it is skipped
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(saveFile.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+
+    private String segmentName(int index, long generation) {
+        return String.format("%s.%06d-%d.seg", saveFile.getFileName(), index, generation);
+    }
+
+    // One slot range and the file holding its books as of the last save
+    private static final class Segment {
+        int start;
+        int end;
+        String file;                                                       // Null until first written
+        int count;                                                         // Books in the file
+        boolean dirty;                                                     // Changed since captured for a save
+        boolean stale;                                                     // Its last save failed
+
+        boolean needsWrite() {
+            return dirty || stale || file == null;
+        }
+    }
+
+    // The segments to write and the snapshot to write them from, and how far the save has got. The state is
+    // written by the saving thread only and may be read from any other.
+    static final class Changes {
+        private final Catalog.Snapshot snapshot;
+        private final int[] starts;
+        private final int[] ends;
+        private final boolean[] dirty;
+        private volatile int total = -1;                                   // Slots to write, -1 until the write starts
+        private volatile int done;                                         // ...of which passed so far
+        private volatile long startNanos;
+        private volatile long elapsedNanos = -1;                           // Set once finished
+        private volatile String failure;
+
+        private Changes(Catalog.Snapshot snapshot, int[] starts, int[] ends, boolean[] dirty) {
+            this.snapshot = snapshot;
+            this.starts = starts;
+            this.ends = ends;
+            this.dirty = dirty;
+        }
+
+        // Segments this save rewrites, of all the catalog's segments
+        int dirty() {
+            int count = 0;
+            for (boolean d : dirty) {
+                count += d ? 1 : 0;
+            }
+            return count;
+        }
+
+        int segments() {
+            return dirty.length;
+        }
+
+        // Fraction of the slots to write that have been written, 0 while the save waits to start
+        double progress() {
+            int slots = total;
+            return slots < 0 ? 0 : slots == 0 ? 1 : Math.min(1, (double) done / slots);
+        }
+
+        boolean isStarted() {
+            return total >= 0;
+        }
+
+        boolean isFinished() {
+            return elapsedNanos >= 0;
+        }
+
+        // Why the save failed, null if it succeeded or has not finished
+        String failure() {
+            return failure;
+        }
+
+        long elapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        private void start(int slots) {
+            startNanos = System.nanoTime();
+            total = slots;
+        }
+
+        private void finish(String error) {
+            if (total < 0) {
+                start(0);
+            }
+            failure = error;
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+    }
+}
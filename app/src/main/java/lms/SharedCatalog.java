@@ -0,0 +1,230 @@
+package lms;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Catalog shared between server sessions. Index lookups run in parallel under the read lock. Writers are striped
+// by ISBN hash: each holds its ISBN's stripe while it checks the book is there, queues its change and waits for
+// it, so writers on other ISBNs go ahead meanwhile. Queued changes are applied in batches, by whichever writer
+// gets to it first, under one write lock that keeps the indexes and the journal in step with the slots; readers
+// wait for the write lock once per batch rather than once per change. Indexes are built up front so no read
+// ever mutates the catalog. Results are views over O(1) catalog snapshots, so reading (and decoding) them
+// happens after the lock is released.
+class SharedCatalog {
+    private static final int STRIPES = 64;                                 // Writer stripes, a power of two
+
+    private final Catalog catalog;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final ConcurrentLinkedQueue<Write> writes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean applying = new AtomicBoolean();           // A writer is applying queued changes
+
+    SharedCatalog(Catalog catalog) {
+        this.catalog = catalog;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        lock.writeLock().lock();
+        try {
+            catalog.buildIndexes();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // One page of query results together with the total number of matches, and for expressions the plan
+    static final class Page {
+        final List<Book> books;
+        final int total;
+        final String plan;                                                 // Null for plain searches
+
+        Page(List<Book> books, int total, String plan) {
+            this.books = books;
+            this.total = total;
+            this.plan = plan;
+        }
+    }
+
+    // Search (blank term = every book), then filter, then sort; any step may be skipped with null
+    Page query(String term, String criteria, SortOrder order, int offset, int limit) {
+        List<Book> list;
+        lock.readLock().lock();
+        try {
+            list = catalog.query(Query.of(term, criteria, order));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page(list, offset, limit, null);
+    }
+
+    // Books matching an Expression, then filtered and sorted like query; a sort given here overrides the
+    // expression's own. The page carries the plan's explain output.
+    Page select(String expression, String criteria, SortOrder order, int offset, int limit) throws ValidationException {
+        Expression where = Expression.parse(expression);
+        Query query = Query.of(where);
+        if (criteria != null && !criteria.isBlank()) {
+            query = query.filter(criteria);
+        }
+        if (order != null) {
+            query = query.sort(order);
+        }
+        List<Book> list;
+        String plan;
+        lock.readLock().lock();
+        try {
+            list = catalog.query(query);
+            plan = catalog.plan(where, query.order).explain();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page(list, offset, limit, plan);
+    }
+
+    private static Page page(List<Book> list, int offset, int limit, String plan) {
+        int from = Math.min(Math.max(offset, 0), list.size());
+        int to = (int) Math.min(list.size(), (long) from + Math.max(limit, 0));
+        return new Page(list.subList(from, to), list.size(), plan);
+    }
+
+    // Thread-safe on its own, no lock needed
+    QueryCache queryCache() {
+        return catalog.queryCache();
+    }
+
+    List<String> suggest(String term, int limit) {
+        lock.readLock().lock();
+        try {
+            return catalog.suggest(term, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Book find(String isbn) {
+        lock.readLock().lock();
+        try {
+            return catalog.find(isbn);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return catalog.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Listeners (indexes, journal) run inside the write lock; waiting for the journal fsync is up to the caller
+    void add(Book book) throws ValidationException {
+        write(book.getISBN(), false, catalog -> {
+            catalog.add(book);
+            return null;
+        });
+    }
+
+    Book remove(String isbn) {
+        try {
+            return write(isbn, true, catalog -> catalog.remove(isbn));
+        } catch (ValidationException e) {
+            throw new IllegalStateException(e);                            // Removals are never rejected
+        }
+    }
+
+    // Returns the replaced book, or null if there is no book with that ISBN to replace
+    Book update(Book book) throws ValidationException {
+        return write(book.getISBN(), true, catalog -> catalog.update(book));
+    }
+
+    // Runs a change under its ISBN's stripe: a change to an existing book is dropped (returning null) when there
+    // is none, and no other writer can add or remove that ISBN between the check and the change
+    private Book write(String isbn, boolean existing, Change change) throws ValidationException {
+        ReentrantLock stripe = stripes[Catalog.normalizeISBN(isbn).hashCode() & (STRIPES - 1)];
+        stripe.lock();
+        try {
+            if (existing) {
+                lock.readLock().lock();
+                try {
+                    if (catalog.idOf(isbn) < 0) {
+                        return null;
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+            Write write = new Write(change);
+            writes.add(write);
+            while (!write.done) {
+                if (applying.compareAndSet(false, true)) {
+                    applyWrites();
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            return write.result();
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    // Applies every queued change under one write lock. A change queued while the last batch was finishing
+    // would find applying still set, so look again once it is cleared.
+    private void applyWrites() {
+        do {
+            lock.writeLock().lock();
+            try {
+                for (Write write; (write = writes.poll()) != null; ) {
+                    write.apply(catalog);
+                }
+            } finally {
+                lock.writeLock().unlock();
+                applying.set(false);
+            }
+        } while (!writes.isEmpty() && applying.compareAndSet(false, true));
+    }
+
+    private interface Change {
+        Book apply(Catalog catalog) throws ValidationException;
+    }
+
+    // A queued change and its outcome, handed back to the writer that queued it
+    private static final class Write {
+        private final Change change;
+        private final Thread writer = Thread.currentThread();
+        private volatile boolean done;
+        private Book result;                                               // Published by the write to done
+        private Throwable failure;
+
+        Write(Change change) {
+            this.change = change;
+        }
+
+        void apply(Catalog catalog) {
+            try {
+                result = change.apply(catalog);
+            } catch (ValidationException | RuntimeException | Error e) {
+                failure = e;                                               // Rethrown by the writer, not the one applying
+            }
+            done = true;
+            LockSupport.unpark(writer);
+        }
+
+        Book result() throws ValidationException {
+            if (failure instanceof ValidationException) {
+                throw (ValidationException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package lms;
+
+import java.util.*;
+
+// Sorted secondary indexes, one per SortOrder, built on first use and kept current on add/remove.
+// Entries carry their sort keys so ordering never touches (or decodes) the books themselves.
+class SortIndex implements CatalogListener {
+    private final Catalog catalog;
+    private final EnumMap<SortOrder, TreeSet<Entry>> indexes = new EnumMap<>(SortOrder.class);
+
+    public SortIndex(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public void bookAdded(int id, Book book) {
+        if (!indexes.isEmpty()) {
+            Entry entry = new Entry(id, book);
+            for (TreeSet<Entry> index : indexes.values()) {
+                index.add(entry);
+            }
+        }
+    }
+
+    @Override
+    public void bookRemoved(int id, Book book) {
+        if (!indexes.isEmpty()) {
+            Entry entry = new Entry(id, book);
+            for (TreeSet<Entry> index : indexes.values()) {
+                index.remove(entry);
+            }
+        }
+    }
+
+    // Rebuilds the orders already built, from the books in their new slots
+    @Override
+    public void slotsCompacted(int from) {
+        Set<SortOrder> built = EnumSet.noneOf(SortOrder.class);
+        built.addAll(indexes.keySet());
+        indexes.clear();
+        for (SortOrder order : built) {
+            index(order);
+        }
+    }
+
+    // Returns the list's books in the given order as a new view; the list itself is left untouched
+    public List<Book> sorted(SortOrder order, List<Book> list) {
+        int k = list.size();
+        if (!catalog.isCurrent(list)) {
+            Book[] copy = list.toArray(new Book[0]);
+            ParallelScan.sort(copy, order.getComparator());
+            return Arrays.asList(copy);
+        }
+        Catalog.View view = (Catalog.View) list;
+        if ((long) k * (32 - Integer.numberOfLeadingZeros(k)) < catalog.size()) {
+            Entry[] entries = ParallelScan.range(0, k).mapToObj(i -> new Entry(catalog, view.id(i))).toArray(Entry[]::new);
+            ParallelScan.sort(entries, keys(order));                       // Small subsets: sorting is cheaper than a walk
+            int[] ids = new int[k];
+            for (int i = 0; i < k; i++) {
+                ids[i] = entries[i].id;
+            }
+            return catalog.view(ids, k);
+        }
+        BitSet members = new BitSet(catalog.slotCount());
+        for (int i = 0; i < k; i++) {
+            members.set(view.id(i));
+        }
+        int[] ids = new int[k];
+        int n = 0;
+        for (Entry entry : index(order)) {                                 // Already ordered, just pick the members
+            if (members.get(entry.id)) {
+                ids[n++] = entry.id;
+            }
+        }
+        return catalog.view(ids, n);
+    }
+
+    // Builds the index for every order now rather than on first use
+    void ensureBuilt() {
+        for (SortOrder order : SortOrder.values()) {
+            index(order);
+        }
+    }
+
+    private TreeSet<Entry> index(SortOrder order) {
+        TreeSet<Entry> index = indexes.get(order);
+        if (index == null) {
+            index = new TreeSet<>(comparator(order));
+            if (indexes.isEmpty()) {
+                int limit = catalog.slotCount();
+                for (int start = 0; start < limit; start += ParallelScan.CHUNK) {
+                    Entry[] entries = ParallelScan.range(start, Math.min(limit, start + ParallelScan.CHUNK))
+                            .mapToObj(id -> catalog.isLive(id) ? new Entry(catalog, id) : null).toArray(Entry[]::new);
+                    for (Entry entry : entries) {
+                        if (entry != null) {
+                            index.add(entry);
+                        }
+                    }
+                }
+            } else {
+                index.addAll(indexes.values().iterator().next());          // Reuse the already extracted keys
+            }
+            indexes.put(order, index);
+        }
+        return index;
+    }
+
+    // Ties broken by insertion order, so every book has its own place in the index
+    private static Comparator<Entry> comparator(SortOrder order) {
+        return keys(order).thenComparingInt(e -> e.id);
+    }
+
+    // Mirrors SortOrder's comparators over the extracted keys
+    private static Comparator<Entry> keys(SortOrder order) {
+        switch (order) {
+            case TITLE:
+                return Comparator.<Entry, String>comparing(e -> e.title).thenComparing(e -> e.author).thenComparingInt(e -> e.year);
+            case AUTHOR:
+                return Comparator.<Entry, String>comparing(e -> e.author).thenComparingInt(e -> e.year).thenComparing(e -> e.title);
+            case YEAR:
+                return Comparator.<Entry>comparingInt(e -> e.year).thenComparing(e -> e.author).thenComparing(e -> e.title);
+            default:
+                return Comparator.comparing(e -> e.isbn);
+        }
+    }
+
+    // Sort keys of one book, shared by every index
+    private static class Entry {
+        final int id;
+        final String title;
+        final String author;
+        final int year;
+        final String isbn;
+
+        Entry(int id, Book book) {
+            this.id = id;
+            this.title = book.getTitle();
+            this.author = book.getAuthor();
+            this.year = book.getYear();
+            this.isbn = book.getISBN();
+        }
+
+        Entry(Catalog catalog, int id) {
+            this.id = id;
+            this.title = catalog.title(id);
+            this.author = catalog.author(id);
+            this.year = catalog.year(id);
+            this.isbn = catalog.isbn(id);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package lms;
+
+import java.util.Comparator;
+
+// Sort orders offered by the library view, in menu order
+enum SortOrder implements ChoiceSelection {
+    TITLE("Title", Comparator.comparing(Book::getTitle).thenComparing(Book::getAuthor).thenComparingInt(Book::getYear)),
+    AUTHOR("Author", Comparator.comparing(Book::getAuthor).thenComparingInt(Book::getYear).thenComparing(Book::getTitle)),
+    YEAR("Publication Year", Comparator.comparingInt(Book::getYear).thenComparing(Book::getAuthor).thenComparing(Book::getTitle)),
+    ISBN("ISBN", Comparator.comparing(Book::getISBN));
+
+    private final String label;
+    private final Comparator<Book> comparator;
+
+    SortOrder(String label, Comparator<Book> comparator) {
+        this.label = label;
+        this.comparator = comparator;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    @Override
+    public Comparator<Book> getComparator() {
+        return comparator;
+    }
+}
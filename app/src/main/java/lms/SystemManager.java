@@ -0,0 +1,967 @@
+package lms;
+
+import java.util.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@FunctionalInterface                                                       // Sorting Interface
+interface ChoiceSelection {
+    Comparator<Book> getComparator();
+}
+
+@FunctionalInterface
+interface BookType {
+    boolean matchesFilter(String criteria);                                // Filtered Interface
+}
+
+public class SystemManager {
+    private static final String SAVE_FILE = "Books.dat";                   // Save File Constant
+    private static final boolean MAPPED = "mapped".equalsIgnoreCase(System.getProperty("lms.catalog"));   // -Dlms.catalog=mapped
+    private static final boolean COLUMNAR = "columnar".equalsIgnoreCase(System.getProperty("lms.catalog"));   // -Dlms.catalog=columnar
+    private static final boolean CHANGE_FEED = Boolean.getBoolean("lms.changeFeed");   // -Dlms.changeFeed=true
+    private static Catalog catalog;                                        // Load data
+    private static Journal journal;                                        // Write-ahead log of catalog changes
+    private static SegmentedSave store;                                    // Which parts of the save file are out of date
+    private static ChangeFeed feed;                                        // Changes for other systems, if enabled
+    private static Future<SegmentedSave.Changes> saving;                   // Save started from the menu, if not yet reported
+    private static final PagedTable table = new PagedTable(Integer.getInteger("lms.pageSize", 20));   // -Dlms.pageSize=N
+    private static final Map<String, SortOrder> SORT_OPTIONS = new LinkedHashMap<>();  // Menu key -> sort order
+    private static Scanner scanner = new Scanner(System.in);               // Create Scanner
+    private static final Metrics.Timer IMPORT_TIME = Metrics.timer("file.import");
+    private static final Metrics.Timer EXPORT_TIME = Metrics.timer("file.export");
+    private static final Metrics.Timer LIST_TIME = Metrics.timer("console.listAll");
+
+    static {
+        for (SortOrder order : SortOrder.values()) {
+            SORT_OPTIONS.put(Integer.toString(order.ordinal() + 1), order);
+        }
+        // Read whichever catalog is loaded at the time, from the metrics thread
+        Metrics.gauge("catalog.books", () -> catalog.size());
+        Metrics.gauge("catalog.slots", () -> catalog.slotCount());
+        Metrics.gauge("index.terms", () -> catalog.indexedTerms());
+        Metrics.gauge("queryCache.entries", () -> catalog.queryCache().size());
+        Metrics.gauge("queryCache.bytes", () -> catalog.queryCache().bytes());
+        Metrics.gauge("queryCache.hits", () -> catalog.queryCache().hits());
+        Metrics.gauge("queryCache.misses", () -> catalog.queryCache().misses());
+        Metrics.gauge("queryCache.evictions", () -> catalog.queryCache().evictions());
+        Metrics.gauge("queryCache.invalidations", () -> catalog.queryCache().invalidations());
+    }
+
+    // main
+    public static void main(String[] args) {        
+        Metrics.registerMBean();                                           // Only with -Dlms.metrics=true
+
+        // Headless mode, e.g. --import books.csv --save
+        if (args.length > 0) {
+            System.exit(runBatch(args));
+        }
+
+        // Library initialization
+        initializeLibrary();
+
+        // Display main menu
+        clearScreen();
+        showCredits();
+        waitForEnter();
+        clearScreen();
+        displayMenu();
+        
+        // Close scanner before exiting
+        scanner.close();
+    }
+
+    // Main Menu
+    private static void displayMenu() {
+        clearScreen();
+        while (true) {
+            String status = saveStatus();
+            if (status != null) {
+                System.out.println(status);
+            }
+            System.out.println("╔════╦═══════════════╗");
+            System.out.println("║ 1. ║ Show Library  ║");
+            System.out.println("║ 2. ║ Add Book      ║");
+            System.out.println("║ 3. ║ Remove Book   ║");
+            System.out.println("║ 4. ║ Search        ║");
+            System.out.println("║ 5. ║ Save Changes  ║");
+            System.out.println("║ 6. ║ Exit          ║");
+            System.out.println("╚════╩═══════════════╝");
+            System.out.print("Select an option: ");
+            
+            try {
+                int userSelection = UserInput.getInt("", 1, 6);
+
+                if (userSelection == 1) {
+                    clearScreen();
+                    showLibrary(Query.ALL);
+                } else if (userSelection == 2) {
+                    addBook();
+                } else if (userSelection == 3) {
+                    clearScreen();
+                    removeBook();
+                } else if (userSelection == 4) {
+                    clearScreen();
+                    Query results = searchMenu();
+                    if (results != null) {
+                        showLibrary(results);
+                    }
+                } else if (userSelection == 5) {
+                    clearScreen();
+                    saveLibrary();
+                } else if (userSelection == 6) {
+                    clearScreen();
+                    awaitSave();
+                    closeJournal();
+                    dumpMetrics();
+                    goodbye();
+                    System.exit(0);
+                }
+            } catch (ValidationException e) {
+                clearScreen();
+                System.err.println("Error: " + e.getMessage());
+            }
+        }
+    }
+
+    // Search for book by title or author
+    private static Query searchMenu() {
+        clearScreen();
+        System.out.println("╔═════════════════════╗");
+        System.out.println("║   SEARCH FOR BOOK   ║");
+        System.out.println("╚═════════════════════╝");
+        System.out.println("Search words, or combine fields: genre:Sci-Fi author:Abnett year:2000..2010 sort:year");
+        try {
+            String searchTerm = UserInput.getNonEmptyString("Search for: ");
+            if (Expression.isExpression(searchTerm)) {
+                return Query.of(Expression.parse(searchTerm));
+            }
+            return Query.of(searchTerm, null, null);
+        } catch (ValidationException e) {
+            System.err.println("Error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Add Book
+    private static void addBook() {
+        clearScreen();
+        System.out.println("╔════════════════════╗");
+        System.out.println("║    ADD NEW BOOK    ║");
+        System.out.println("╚════════════════════╝");
+
+        try {
+            String title = UserInput.getNonEmptyString("Enter Title: ");
+            String author = UserInput.getPatternMatchingString("Enter Author: ", Validation.AUTHOR_PATTERN, "Author cannot contain special characters or numbers.");
+            int year = UserInput.getInt("Enter Publication Year: ", 0, Validation.currentYear());
+            String isbn = UserInput.getNonEmptyString("Enter ISBN: ");
+            Validation.checkNewISBN(isbn);
+
+            System.out.println("\nBook Type: ");
+            System.out.println("1. Fiction");
+            System.out.println("2. Textbook");
+            System.out.println("3. Non-Fiction");
+            int bookType = UserInput.getInt("Choose book type (1-3): ", 1, 3);
+
+            Book newBook;
+            switch(bookType) {
+                case 1:
+                    String genre = UserInput.getPatternMatchingString("Enter Genre: ", Validation.GENRE_PATTERN, "Genre cannot contain special characters");
+                    newBook = new FictionBook(title, author, year, isbn, genre);
+                    break;
+                case 2:
+                    String subject = UserInput.getPatternMatchingString("Enter textbook subject: ", Validation.SUBJECT_PATTERN, "Subject cannot contain special characters or numbers");
+                    newBook = new Textbook(title, author, year, isbn, subject);
+                    break;
+                default:
+                    newBook = new Book(title, author, year, isbn);
+            }
+            catalog.add(newBook);
+            syncJournal();
+        } catch (ValidationException e) {
+            System.err.println("\nError: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("\nUnexpected error: " + e.getMessage());
+        }
+
+        waitForEnter();
+        clearScreen();
+    }
+
+    // Remove Book
+    private static void removeBook() {
+        clearScreen();
+        System.out.println("╔════════════════════╗");
+        System.out.println("║     REMOVE BOOK    ║");
+        System.out.println("╚════════════════════╝");
+        try {
+            String isbn = UserInput.getNonEmptyString("Enter ISBN of Book to Remove: ");
+            Book book = catalog.remove(isbn);
+            if (book != null) {
+                syncJournal();
+                System.out.println("Removing " + book.getTitle() + " from library...");
+            } else {
+                System.out.println("No book found with ISBN " + isbn);
+            }
+        } catch (ValidationException e) {
+            System.err.println("\nError: " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("\nUnexpected Error: " + e.getMessage());
+        }
+    }
+
+    // Show Library; the session's list is a snapshot view, so books added or removed meanwhile don't shift it.
+    // Filtering and sorting refine the query behind it, answered from the catalog's result cache when possible.
+    private static void showLibrary(Query query) {
+        clearScreen();
+        listQuery(query);
+        while (true) {
+            try {
+                System.out.println("N = Next page           P = Previous page   J = Jump to page");
+                System.out.println("F = Filter books        S = Sort Books      R = Return to Menu");
+                System.out.print("Select an option: ");
+                String choice = scanner.nextLine().toLowerCase();
+                if (choice.equals("n") || choice.equals("p")) {
+                    clearScreen();
+                    boolean moved = choice.equals("n") ? table.next() : table.previous();
+                    if (!moved) {
+                        System.err.println(choice.equals("n") ? "Already on the last page!" : "Already on the first page!");
+                    }
+                    table.print(System.out);
+                } else if (choice.equals("j")) {
+                    System.out.print("Go to page (1-" + table.pageCount() + "): ");
+                    String input = scanner.nextLine().trim();
+                    clearScreen();
+                    try {
+                        if (!table.jump(Integer.parseInt(input))) {
+                            System.err.println("No such page!");
+                        }
+                    } catch (NumberFormatException e) {
+                        System.err.println("Please enter a valid page number");
+                    }
+                    table.print(System.out);
+                } else if (choice.equals("f")) {
+                    clearScreen();
+                    query = filterBooks(query);                   // Narrows the current query, "All Books" resets it
+                    listQuery(query);
+                } else if (choice.equals("s")) {
+                    clearScreen();
+                    query = sortBooks(query);
+                    listQuery(query);
+                } else if (choice.equals("r")) {
+                    clearScreen();
+                    break;
+                } else {
+                    clearScreen();
+                    System.err.println("Invalid option!");
+                    table.print(System.out);
+                }
+            } catch (Exception e) {
+                System.err.println("Error!");
+            }
+        }
+    }
+
+    // Goodbye Message
+    private static void goodbye() {
+        System.out.println("Quitting...\nGoodbye!");
+
+    }
+
+    private static void showCredits() {
+        System.out.println("***************************************************");
+        System.out.println("*     ╔═════════════════════════════════════╗     *");
+        System.out.printf("*     ║%-5s %s %5s║     *%n", " ", "LIBRARY MANAGEMENT SYSTEM", " ");
+        System.out.println("*     ╚═════════════════════════════════════╝     *");
+        System.out.printf("*%30s                   *%n*%32s                 *%n*%30s                   *%n", "Created by:", "Matthew Ingoglia", "Ethan Perez");
+        System.out.println("***************************************************");
+    }
+
+    // Runs command line operations without the menus, returns the process exit status
+    private static int runBatch(String[] args) {
+        List<String> imports = new ArrayList<>();
+        BatchImport.Format format = null;
+        boolean save = false;
+        int port = -1;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--import") && i + 1 < args.length) {
+                imports.add(args[++i]);
+            } else if (arg.equals("--format") && i + 1 < args.length) {
+                try {
+                    format = BatchImport.Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Unknown format: " + args[i]);
+                    return 2;
+                }
+            } else if (arg.equals("--save")) {
+                save = true;
+            } else if (arg.equals("--serve") && i + 1 < args.length) {
+                try {
+                    port = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid port: " + args[i]);
+                    return 2;
+                }
+            } else {
+                if (!arg.equals("--help")) {
+                    System.err.println("Unknown option: " + arg);
+                }
+                System.err.println("Usage: java -jar lms.jar [--import <file|->]... [--format csv|jsonl] [--save] [--serve <port>]");
+                return 2;
+            }
+        }
+
+        loadLibrary();
+        if (journal != null) {
+            journal.beginBatch();
+        }
+        BatchImport batch = new BatchImport(catalog, System.err);
+        long start = System.nanoTime();
+        for (String source : imports) {
+            boolean stdin = source.equals("-");
+            try (BufferedReader in = stdin
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                    : Files.newBufferedReader(Paths.get(source), StandardCharsets.UTF_8)) {
+                if (!stdin) {
+                    batch.expect(Files.size(Paths.get(source)));
+                }
+                int added = batch.run(in, source, format != null ? format : BatchImport.Format.of(source));
+                System.out.println("Imported " + added + " books from " + source);
+            } catch (IOException e) {
+                System.err.println("Error importing " + source + ": " + e.getMessage());
+                closeJournal();
+                return 1;
+            }
+        }
+        if (!imports.isEmpty()) {
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%d books added, %d rejected in %d ms%n", batch.added(), batch.failed(), millis);
+        }
+        if (save) {
+            saveLibrary();                                                 // Also writes out the buffered journal entries
+            awaitSave();
+        }
+        if (journal != null) {
+            journal.endBatch();
+        }
+        syncJournal();                                                     // One sync for the whole batch
+        if (port >= 0) {
+            return serve(port);
+        }
+        closeJournal();
+        dumpMetrics();
+        return batch.failed() > 0 ? 1 : 0;
+    }
+
+    // Serves the catalog over HTTP until the process is stopped
+    private static int serve(int port) {
+        CatalogServer server;
+        try {
+            server = CatalogServer.start(new SharedCatalog(catalog), journal, port);
+        } catch (IOException e) {
+            System.err.println("Error starting server: " + e.getMessage());
+            closeJournal();
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            closeJournal();
+        }));
+        System.out.println("Serving " + catalog.size() + " books on http://127.0.0.1:" + server.port() + "/books");
+        while (true) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                return 0;
+            }
+        }
+    }
+
+    // Initialize Library
+    private static void initializeLibrary() {
+        loadLibrary();
+        if (catalog.isEmpty()) {
+            try {
+                catalog.add(new FictionBook("Salamander", "Kyne", 2009, "978-1844167401", "Sci-Fi"));
+                catalog.add(new FictionBook("Horus Rising", "Abnett", 2006, "978-1849707435", "Sci-Fi"));
+                catalog.add(new FictionBook("False Gods", "McNeil", 2006, "978-1844163700", "Sci-Fi"));
+                catalog.add(new Book("The Bible", "Apostles", 0, "0"));
+                catalog.add(new Textbook("Intro to Software Development", "Ingoglia", 2025, "1", "Computer Science"));
+                saveLibrary();
+            } catch (ValidationException e) {
+                System.err.println("Error creating default books: " + e.getMessage());
+                catalog = new Catalog(null, COLUMNAR);
+            }
+        }
+    }
+
+    // Load the save file and replay the journal on top of it
+    private static void loadLibrary() {
+        try {
+            store = SegmentedSave.open(Paths.get(SAVE_FILE), !MAPPED);     // Mapped segments must stay uncompressed
+        } catch (IOException e) {
+            System.err.println("Error reading library manifest: " + e.getMessage());
+            catalog = new Catalog(null, COLUMNAR);
+            return;                                                        // No journal or saves over a save we could not read
+        }
+        if (store.isSegmented()) {
+            if (!loadSegments()) {
+                store = null;                                              // Never save over a segment we could not read
+                return;
+            }
+        } else {
+            catalog = MAPPED ? mapFile(SAVE_FILE) : null;
+            if (catalog == null) {
+                catalog = new Catalog(null, COLUMNAR);
+                try {
+                    importFile(catalog, SAVE_FILE);
+                } catch (NoSuchFileException e) {
+                    System.out.println("No existing library file found. Creating default library.");
+                } catch (IOException e) {
+                    System.err.println("Error importing library: " + e.getMessage());
+                    if (!setAside(Paths.get(SAVE_FILE))) {
+                        store = null;                                      // Never save over a file we could not read
+                        return;
+                    }
+                }
+            }
+        }
+        store.track(catalog);                                              // Before replay, so replayed changes are saved
+        openJournal();
+        openFeed();
+    }
+
+    // Load every segment file the manifest lists, mapped as one catalog or streamed one after another. A segment
+    // that fails partway is moved aside before its books read so far can be saved over it; returns false if that
+    // failed, and then nothing may be saved.
+    private static boolean loadSegments() {
+        List<Path> files = store.files();
+        MappedCatalog mapped = null;
+        if (MAPPED) {
+            try {
+                mapped = MappedCatalog.open(files);
+            } catch (IOException e) {
+                System.err.println("Error mapping library: " + e.getMessage());
+            }
+        }
+        if (mapped != null) {
+            catalog = new Catalog(mapped);
+            int end = 0;
+            for (int i = 0; i < files.size(); i++) {
+                end += mapped.count(i);
+                store.loaded(i, end, true);
+            }
+            return true;
+        }
+        catalog = new Catalog(null, COLUMNAR);
+        boolean saveable = true;
+        for (int i = 0; i < files.size(); i++) {
+            boolean complete;
+            try {
+                complete = importFile(catalog, files.get(i).toString());
+            } catch (IOException e) {
+                System.err.println("Error importing library: " + e.getMessage());
+                saveable &= setAside(files.get(i));                        // Keeps the rest of its books
+                complete = false;
+            }
+            store.loaded(i, catalog.slotCount(), complete);
+        }
+        return saveable;
+    }
+
+    // Move an unreadable save file out of the way so the next save starts a new one beside it
+    private static boolean setAside(Path file) {
+        Path aside = file.resolveSibling(file.getFileName() + ".unreadable");
+        try {
+            Files.move(file, aside);
+            System.err.println("Moved " + file + " to " + aside + " so nothing is saved over it");
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            System.err.println("Error moving " + file + " aside, the library will not be saved: " + aside + " already exists");
+            return false;
+        } catch (IOException e) {
+            System.err.println("Error moving " + file + " aside, the library will not be saved: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Replay outstanding journal segments into the catalog and start journaling changes
+    private static void openJournal() {
+        try {
+            journal = Journal.open(Paths.get(SAVE_FILE), catalog, store);
+        } catch (IOException e) {
+            System.err.println("Error opening journal, changes will only be kept when saved: " + e.getMessage());
+            journal = null;
+        }
+    }
+
+    // Publish changes from here on to Books.dat.changes, with -Dlms.changeFeed=true
+    private static void openFeed() {
+        if (!CHANGE_FEED) {
+            return;
+        }
+        try {
+            feed = ChangeFeed.open(Paths.get(SAVE_FILE), catalog, Integer.getInteger("lms.changeFeedCapacity", 1 << 16),
+                    100, TimeUnit.MILLISECONDS, 64L << 20);
+        } catch (IOException e) {
+            System.err.println("Error opening change feed, changes will not be published: " + e.getMessage());
+            feed = null;
+        }
+    }
+
+    // Wait for the latest change to reach the journal on disk
+    private static void syncJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.awaitDurable();
+        } catch (IOException e) {
+            System.err.println("Error saving change to journal: " + e.getMessage());
+        }
+    }
+
+    // Also writes out the rest of the change feed
+    private static void closeJournal() {
+        if (feed != null) {
+            try {
+                feed.close();
+            } catch (IOException e) {
+                System.err.println("Error writing change feed: " + e.getMessage());
+            }
+        }
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing journal: " + e.getMessage());
+        }
+    }
+
+    // Fold the journal into the save file in the background, or save directly when there is no journal. Either
+    // way only the segments changed since the last save are written, from a snapshot taken right away.
+    private static void saveLibrary() {
+        if (store == null) {
+            return;                                                        // Never loaded, nothing to save over
+        }
+        if (journal == null) {
+            writeSegments();
+            return;
+        }
+        saving = journal.compact();
+        if (saving.isDone()) {
+            awaitSave();                                                   // Already done, or failed to start
+            return;
+        }
+        SegmentedSave.Changes changes = store.latest();
+        System.out.println("Saving library to " + SAVE_FILE + " in the background (" + changes.dirty() + " of "
+                + changes.segments() + " segments changed)");
+    }
+
+    // Wait for the save started from the menu, if any, and report how it went
+    private static void awaitSave() {
+        if (saving == null) {
+            return;
+        }
+        if (!saving.isDone()) {
+            System.out.println("Waiting for the save to finish...");
+        }
+        try {
+            SegmentedSave.Changes changes = saving.get();
+            System.out.println("Successfully saved library to " + SAVE_FILE + savedSegments(changes));
+        } catch (ExecutionException e) {
+            System.err.println("Error saving library: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Error saving library: interrupted");
+        } finally {
+            saving = null;
+        }
+    }
+
+    // One line on the latest save, background compactions included, for the main menu; null before the first
+    private static String saveStatus() {
+        SegmentedSave.Changes changes = store == null ? null : store.latest();
+        if (changes == null) {
+            return null;
+        }
+        if (!changes.isStarted()) {
+            return "Save queued...";
+        }
+        if (!changes.isFinished()) {
+            return String.format("Saving... %d%%", (int) (changes.progress() * 100));
+        }
+        if (changes.failure() != null) {
+            return "Last save failed: " + changes.failure();
+        }
+        int changed = store.dirtySegments();
+        return "Last save: " + changes.dirty() + " of " + changes.segments() + " segments written in " + changes.elapsedMillis() + " ms"
+                + (changed > 0 ? ", " + changed + " changed since" : "");
+    }
+
+    // Write the changed segments of the catalog and a new manifest to the save file
+    private static void writeSegments() {
+        long start = Metrics.start();
+        try {
+            SegmentedSave.Changes changes = store.changes(catalog.snapshot());
+            store.write(changes);
+            EXPORT_TIME.record(start);
+            System.out.println("Successfully saved library to " + SAVE_FILE + savedSegments(changes));
+        } catch (IOException e) {
+            System.err.println("Error saving library: " + e.getMessage());
+        }
+    }
+
+    private static String savedSegments(SegmentedSave.Changes changes) {
+        return " (" + changes.dirty() + " of " + changes.segments() + " segments written)";
+    }
+
+    // Map save file for lazy decoding, returns null so the caller falls back to a streamed import
+    private static Catalog mapFile(String filename) {
+        try {
+            MappedCatalog mapped = MappedCatalog.open(Paths.get(filename));
+            return mapped == null ? null : new Catalog(mapped);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error mapping library: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Import book library from save file, streaming records straight into the catalog. Returns false if any
+    // saved book was skipped, and throws if the file itself could not be read.
+    private static boolean importFile(Catalog catalog, String filename) throws IOException {
+        long start = Metrics.start();
+        boolean legacy;
+        boolean complete = true;
+        try (CatalogFile.Reader in = CatalogFile.open(Paths.get(filename))) {
+            legacy = in.isLegacy();
+            catalog.ensureCapacity(in.count());
+            while (true) {
+                try {
+                    Book book = in.next();
+                    if (book == null) {
+                        break;
+                    }
+                    catalog.add(book);
+                } catch (ValidationException e) {
+                    System.err.println("Skipping saved book: " + e.getMessage());
+                    complete = false;
+                }
+            }
+        } finally {
+            IMPORT_TIME.record(start);
+        }
+        if (legacy && !catalog.isEmpty()) {
+            System.out.println("Migrating " + filename + " to the segmented binary catalog format...");
+            store.track(catalog);
+            writeSegments();
+        }
+        return complete;
+    }
+
+    // Lists a query's results, then for an expression how it was answered
+    private static void listQuery(Query query) {
+        listAll(catalog.query(query));
+        if (query.where != null) {
+            System.out.println("Plan: " + catalog.plan(query.where, query.order).summary());
+        }
+    }
+
+    // Lists books in system, one page at a time
+    private static void listAll(List<Book> list) {
+        long start = Metrics.start();
+        table.setBooks(list);
+        table.print(System.out);
+        LIST_TIME.record(start);
+    }
+
+    // Final timings on the way out, when metrics are on
+    private static void dumpMetrics() {
+        if (Metrics.ENABLED) {
+            System.err.print(Metrics.dump());
+        }
+    }
+
+    // Sorts books by either title, author, publication year, or ISBN
+    private static Query sortBooks(Query query) {
+        SortOrder[] optionList = SortOrder.values();
+
+        while (true) {
+            // Display sorting options to user
+            System.out.println("╔═══════════════════════╗");
+            System.out.printf("%s %-22s%1$s%n", "║", "Sort by:");
+            System.out.println("╠═══════════════════════╬═══╗");
+            for (int i = 0; i < optionList.length; i++) {
+                System.out.printf("║ %-21s ║ %d ║%n", optionList[i].getLabel(), i + 1);
+            }
+            System.out.println("╚═══════════════════════╩═══╝");
+            
+            // Get User Input
+            System.out.print("Choose sorting method: ");
+            String input = scanner.nextLine();
+            SortOrder order = SORT_OPTIONS.get(input);
+            if (order != null) {
+                clearScreen();
+                System.out.println("Displaying all results sorted by " + order.getLabel() + ": ");
+                return query.sort(order);
+            } else {
+                clearScreen();
+                System.out.println("Invalid choice!");
+            }
+        }
+    }
+
+    // Filters books by Title, Author, Publication Year, ISBN, or Genre
+    private static Query filterBooks(Query query) {
+        @SuppressWarnings("resource")
+
+        // Filtering Options
+        String[] filterToggles = {"All Books", "Fiction", "Non-Fiction", "Textbooks", "Genre"};
+
+        while (true) {
+            // Display Filtering Options
+            System.out.println("╔════════════════════╗");
+            System.out.printf("║ %-18s ║%n", "Filter by:");
+            System.out.println("╠════════════════════╬═══╗");
+            for (int i = 0; i < filterToggles.length; i++) {
+                System.out.printf("║ %-18s ║ %d ║%n", filterToggles[i], i + 1);
+            }
+            System.out.println("╚════════════════════╩═══╝");
+
+            // Input Filter
+            System.out.print("Select Filter: ");
+            String input = scanner.nextLine();
+
+            // Verify input
+            String criteria = switch(input) {
+                case "1" -> "All";
+                case "2" -> "Fiction";
+                case "3" -> "Non-Fiction";
+                case "4" -> "Textbooks";
+                case "5" -> {
+                    System.out.print("Search for genre: ");
+                    yield scanner.nextLine();
+                }
+                default -> {
+                    yield null;
+                }
+            };
+
+            try {
+                if (criteria != null && !criteria.trim().isEmpty() && criteria != "All") {
+                    clearScreen();
+                    System.out.println("Displaying results filtered by " + criteria + ": ");
+                    return query.filter(criteria);
+                } else if (criteria == "All") {
+                    clearScreen();
+                    System.out.println("Displaying all results: ");
+                    return Query.ALL;
+                } else if (criteria.trim().isEmpty()) {
+                    clearScreen();
+                    System.err.println("Invalid filtering option! Genre cannot be blank!\nPlease try again:");
+                }
+            } catch (NullPointerException e) {
+                clearScreen();
+                System.err.println("Error: Invalid filtering" + "\nPlease enter a valid option:");
+            }
+        }
+    }
+
+    // Attempt to clear screen based on operation system
+    public static void clearScreen() {
+        try {
+            if (System.getProperty("os.name").contains("Windows")) {
+                new ProcessBuilder("cmd", "/c", "cls").inheritIO().start().waitFor();
+            } else {
+                System.out.print("\033[H\033[2J");
+                System.out.flush();
+            }
+        } catch (Exception e) {
+            System.out.println("\n".repeat(50));
+        }
+    }
+
+    // Waits for user to press enter before continuing
+    private static void waitForEnter() {
+        System.out.print("\nPress  < ENTER >  to continue...");
+        scanner.nextLine();
+    }
+}
+
+
+class Book implements BookType, Serializable {
+    // Initialize Variables
+    private String title;
+    private String author;
+    private int year;
+    private String isbn; // --> ISBN
+    private static final long serialVersionUID = 1L;
+
+    public Book(String title, String author, int year, String isbn) throws ValidationException{
+        setTitle(title);
+        setAuthor(author);
+        setYear(year);
+        setISBN(isbn);
+    }
+    
+    // Setters; each validates first, so a rejected value leaves the book unchanged
+    public void setTitle(String title) throws ValidationException {
+        Validation.checkTitle(title);
+        this.title = title;
+    } // Sets book title
+    public void setAuthor(String author) throws ValidationException {
+        Validation.checkAuthor(author);
+        this.author = author;
+    } // Sets author name
+    public void setYear(int year) throws ValidationException {
+        Validation.checkYear(year);
+        this.year = year;
+    } // Sets year of publication
+    public void setISBN(String isbn) throws ValidationException {
+        Validation.checkISBN(isbn);
+        this.isbn = isbn;
+    }
+
+
+    // Getters
+    public String getTitle() {
+        return title;
+    } // Returns book title
+    public String getAuthor() {
+        return author;
+    } // Returns author name
+    public int getYear() {
+        return year;
+    } // Returns year of publication
+    public String getISBN() {
+        return isbn;
+    } // Returns ISBN number
+    public String getGenre() {
+        return "Non-Fiction";
+    }
+
+    @Override
+    public boolean matchesFilter(String criteria) {
+        return "Non-Fiction".equalsIgnoreCase(criteria) || "All".equalsIgnoreCase(criteria);
+    }
+}
+
+class FictionBook extends Book {
+    private String genre;
+    
+    public FictionBook(String title, String author, int year, String isbn, String genre) throws ValidationException {
+        super(title, author, year, isbn);
+        setGenre(genre);
+    }
+
+
+    // Sets genre or throws error
+    public void setGenre(String genre) {
+        if (genre == null || genre.trim().isEmpty()) {
+            throw new IllegalArgumentException("Genre cannot be empty or NULL");
+        }
+        if (!Validation.fitsRecord(genre)) {
+            throw new IllegalArgumentException("Genre cannot exceed " + Validation.MAX_FIELD_BYTES + " bytes");
+        }
+        this.genre = genre;
+    }
+
+    // Override getGenre and returns specified genre
+    @Override
+    public String getGenre() {
+        return genre;
+    } // Returns genre type
+
+    // Checks if the object matches filter
+    @Override
+    public boolean matchesFilter(String criteria) {
+        return "Fiction".equalsIgnoreCase(criteria) || "All".equalsIgnoreCase(criteria) || this.genre.equalsIgnoreCase(criteria);
+    }
+}
+
+class Textbook extends Book{
+    private String genre;
+    
+    public Textbook(String title, String author, int year, String isbn, String subject) throws ValidationException {
+        super(title, author, year, isbn);
+        setGenre(subject);
+    }
+    
+    // Set genre to "[Subject] Textbook" or throw error
+    public void setGenre(String genre) {
+        if (genre == null || genre.trim().isEmpty()) {
+            throw new IllegalArgumentException("Genre cannot be empty or NULL");
+        }
+        if (!Validation.fitsRecord(genre)) {
+            throw new IllegalArgumentException("Genre cannot exceed " + Validation.MAX_FIELD_BYTES + " bytes");
+        }
+        this.genre = genre;
+    }
+
+    // Overrides and returns subject
+    @Override
+    public String getGenre() {
+        return genre;
+    } // Returns genre
+
+    // Checks if the textbook matches filter
+    @Override
+    public boolean matchesFilter(String criteria) {
+        return "Textbooks".equalsIgnoreCase(criteria) || "All".equalsIgnoreCase(criteria) || getGenre().equalsIgnoreCase(criteria);
+    }
+}
+
+class ValidationException extends Exception {
+    public ValidationException(String message) {
+        super(message);
+    }
+}
+
+class UserInput {
+    private static final Scanner scanner = new Scanner(System.in);
+
+    public static String getString(String prompt) {
+        System.out.print(prompt);
+        return scanner.nextLine();
+    }
+
+    public static String getNonEmptyString(String prompt) throws ValidationException {
+        String input = getString(prompt).trim();
+        if (input.isEmpty()) {
+            throw new ValidationException("This Field cannot be empty");
+        }
+        return input;
+    }
+
+    public static int getInt(String prompt, int min, int max) throws ValidationException {
+        while (true) {
+            try {
+                String input = getString(prompt).trim();
+                int value = Integer.parseInt(input);
+                if (value < min || value > max) {
+                    throw new ValidationException(String.format("Please enter a number between %d and %d", min, max));
+                }
+                return value;
+            } catch (NumberFormatException e) {
+                throw new ValidationException("Please enter a valid integer");
+            }
+        }
+    }
+
+    public static String getPatternMatchingString(String prompt, String pattern, String errorMessage) throws ValidationException {
+        String input = getNonEmptyString(prompt);
+        if (!Validation.pattern(pattern).matcher(input).matches()) {
+            throw new ValidationException(errorMessage);
+        }
+        return input;
+    }
+}
\ No newline at end of file
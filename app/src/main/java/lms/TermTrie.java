@@ -0,0 +1,234 @@
+package lms;
+
+import java.util.*;
+
+// Trie over the search index's words, each weighted by the number of books containing it. Serves prefix
+// completion, best-first on a per-node bound of the weights below it, and typo-tolerant lookup: the trie is
+// walked in step with a Levenshtein automaton, kept as one edit-distance row per depth, so only branches that
+// can still end within the edit budget are visited.
+class TermTrie {
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private final Node root = new Node();
+    private int size;
+
+    // Sets a word's weight, adding the word if needed. Bounds only ever rise, so once a word loses weight they
+    // are upper bounds rather than exact maxima, which is all the best-first search relies on.
+    public void put(String word, int weight) {
+        Node node = root;
+        node.bound = Math.max(node.bound, weight);
+        for (int i = 0; i < word.length(); i++) {
+            node = node.child(word.charAt(i), true);
+            node.bound = Math.max(node.bound, weight);
+        }
+        if (node.word == null) {
+            node.word = word;
+            size++;
+        }
+        node.weight = weight;
+    }
+
+    // Removes a word, pruning the nodes that no longer lead to any
+    public void remove(String word) {
+        Node[] path = new Node[word.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < word.length(); i++) {
+            path[i + 1] = path[i].child(word.charAt(i), false);
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        Node node = path[word.length()];
+        if (node.word == null) {
+            return;
+        }
+        node.word = null;
+        node.weight = 0;
+        size--;
+        for (int i = word.length(); i > 0 && path[i].word == null && path[i].labels.length == 0; i--) {
+            path[i - 1].removeChild(word.charAt(i - 1));
+        }
+    }
+
+    // Weight of the word, 0 if it is not in the trie
+    public int weight(String word) {
+        Node node = find(word);
+        return node == null ? 0 : node.weight;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Up to limit words starting with the prefix, heaviest first, equal weights in word order
+    public List<String> complete(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        Node start = find(prefix);
+        if (start == null || limit <= 0) {
+            return result;
+        }
+        // Nodes queue on their bound and words on their weight; a word is only taken once no queued node could
+        // still hold a heavier one. Nodes go first on ties so equal weights come out in word order.
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        queue.add(new Entry(start.bound, start, null));
+        while (!queue.isEmpty() && result.size() < limit) {
+            Entry entry = queue.poll();
+            if (entry.word != null) {
+                result.add(entry.word);
+                continue;
+            }
+            if (entry.node.word != null) {
+                queue.add(new Entry(entry.node.weight, null, entry.node.word));
+            }
+            for (Node child : entry.node.children) {
+                queue.add(new Entry(child.bound, child, null));
+            }
+        }
+        return result;
+    }
+
+    // Words within maxEdits insertions, deletions, substitutions or adjacent swaps of the given word, mapped to
+    // their distance. As a prefix, words that start with something within maxEdits of it match too, at the
+    // distance of their closest prefix. Stops after limit matches.
+    public Map<String, Integer> fuzzy(String word, int maxEdits, boolean prefix, int limit) {
+        Map<String, Integer> matches = new LinkedHashMap<>();
+        int[][] rows = new int[word.length() + maxEdits + 2][];
+        rows[0] = new int[word.length() + 1];
+        for (int j = 0; j <= word.length(); j++) {
+            rows[0][j] = j;
+        }
+        char[] path = new char[rows.length];
+        int best = prefix ? word.length() : Integer.MAX_VALUE;             // Closest prefix so far, the empty one here
+        for (int i = 0; i < root.labels.length && matches.size() < limit; i++) {
+            walk(root.children[i], root.labels[i], 1, word, maxEdits, prefix, best, rows, path, matches, limit);
+        }
+        return matches;
+    }
+
+    // One automaton step: the row for the path extended by c, from the rows above it (optimal string alignment)
+    private static void walk(Node node, char c, int depth, String word, int maxEdits, boolean prefix, int best,
+            int[][] rows, char[] path, Map<String, Integer> matches, int limit) {
+        int m = word.length();
+        int[] row = rows[depth] != null ? rows[depth] : (rows[depth] = new int[m + 1]);
+        int[] above = rows[depth - 1];
+        path[depth - 1] = c;
+        row[0] = depth;
+        int min = row[0];
+        for (int j = 1; j <= m; j++) {
+            int cost = word.charAt(j - 1) == c ? 0 : 1;
+            int d = Math.min(Math.min(above[j] + 1, row[j - 1] + 1), above[j - 1] + cost);
+            if (depth > 1 && j > 1 && word.charAt(j - 1) == path[depth - 2] && word.charAt(j - 2) == c) {
+                d = Math.min(d, rows[depth - 2][j - 2] + 1);
+            }
+            row[j] = d;
+            min = Math.min(min, d);
+        }
+        if (prefix) {
+            best = Math.min(best, row[m]);
+        }
+        int distance = prefix ? best : row[m];
+        if (node.word != null && distance <= maxEdits) {
+            matches.merge(node.word, distance, Math::min);
+        }
+        if (min <= maxEdits && depth + 1 < rows.length) {
+            for (int i = 0; i < node.labels.length && matches.size() < limit; i++) {
+                walk(node.children[i], node.labels[i], depth + 1, word, maxEdits, prefix, best, rows, path, matches, limit);
+            }
+        } else if (best <= maxEdits) {                                     // Prefix already matched, no closer one below
+            for (Node child : node.children) {
+                collect(child, best, matches, limit);
+            }
+        }
+    }
+
+    // Every word at or below the node, at the given distance
+    private static void collect(Node node, int distance, Map<String, Integer> matches, int limit) {
+        if (matches.size() >= limit) {
+            return;
+        }
+        if (node.word != null) {
+            matches.merge(node.word, distance, Math::min);
+        }
+        for (Node child : node.children) {
+            collect(child, distance, matches, limit);
+        }
+    }
+
+    private Node find(String word) {
+        Node node = root;
+        for (int i = 0; i < word.length() && node != null; i++) {
+            node = node.child(word.charAt(i), false);
+        }
+        return node;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        final int priority;                                                // Node bound or word weight
+        final Node node;                                                   // Either a node to expand
+        final String word;                                                 // or a word to emit
+
+        Entry(int priority, Node node, String word) {
+            this.priority = priority;
+            this.node = node;
+            this.word = word;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            if ((word == null) != (other.word == null)) {
+                return word == null ? -1 : 1;
+            }
+            return word == null ? 0 : word.compareTo(other.word);
+        }
+    }
+
+    // Children are kept sorted by label in parallel arrays, searched by binary search
+    private static final class Node {
+        char[] labels = NO_LABELS;
+        Node[] children = NO_CHILDREN;
+        String word;                                                       // Set when a word ends here
+        int weight;
+        int bound;                                                         // >= the weight of every word below
+
+        Node child(char label, boolean create) {
+            int pos = Arrays.binarySearch(labels, label);
+            if (pos >= 0) {
+                return children[pos];
+            }
+            if (!create) {
+                return null;
+            }
+            pos = -pos - 1;
+            Node child = new Node();
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[labels.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            newLabels[pos] = label;
+            newChildren[pos] = child;
+            System.arraycopy(labels, pos, newLabels, pos + 1, labels.length - pos);
+            System.arraycopy(children, pos, newChildren, pos + 1, labels.length - pos);
+            labels = newLabels;
+            children = newChildren;
+            return child;
+        }
+
+        void removeChild(char label) {
+            int pos = Arrays.binarySearch(labels, label);
+            if (pos < 0) {
+                return;
+            }
+            char[] newLabels = new char[labels.length - 1];
+            Node[] newChildren = new Node[labels.length - 1];
+            System.arraycopy(labels, 0, newLabels, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            System.arraycopy(labels, pos + 1, newLabels, pos, labels.length - pos - 1);
+            System.arraycopy(children, pos + 1, newChildren, pos, labels.length - pos - 1);
+            labels = newLabels.length == 0 ? NO_LABELS : newLabels;
+            children = newChildren.length == 0 ? NO_CHILDREN : newChildren;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package lms;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// Field rules shared by the Book setters, the Add Book menu, batch import and the server. The checks used per
+// record do not allocate: name rules are matched by hand against the same character classes as the patterns
+// below, the year bound is cached until the year turns, and ISBN check digits are computed in place. Patterns
+// for interactive input are compiled once and cached.
+final class Validation {
+    static final String AUTHOR_PATTERN = "^[\\p{L} .'-]+$";
+    static final String GENRE_PATTERN = "^[\\p{L} -]+$";
+    static final String SUBJECT_PATTERN = "^[\\p{L}0-9 &/-]+$";
+    static final int MAX_TITLE = 30;
+    static final int MAX_AUTHOR = 26;
+    static final int MAX_ISBN = 14;                                        // 13 digits and a '-'
+    static final int MAX_FIELD_BYTES = 0xFFFF;                             // Longest UTF-8 string a save file record holds
+
+    private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+    private static volatile YearBound yearBound = YearBound.now();
+
+    private Validation() {
+    }
+
+    // The compiled pattern, compiled on first use
+    static Pattern pattern(String regex) {
+        return PATTERNS.computeIfAbsent(regex, Pattern::compile);
+    }
+
+    // Latest valid publication year; re-read from the clock only once the cached year has ended
+    static int currentYear() {
+        YearBound bound = yearBound;
+        if (System.currentTimeMillis() >= bound.endMillis) {
+            yearBound = bound = YearBound.now();
+        }
+        return bound.year;
+    }
+
+    static void checkTitle(String title) throws ValidationException {
+        if (title == null) {
+            throw new ValidationException("Title cannot be empty");
+        }
+        if (title.length() > MAX_TITLE) {
+            throw new ValidationException("Title cannot exceed " + MAX_TITLE + " characters");
+        }
+    }
+
+    static void checkAuthor(String author) throws ValidationException {
+        if (author == null) {
+            throw new ValidationException("Author Name cannot be empty");
+        }
+        if (author.length() > MAX_AUTHOR) {
+            throw new ValidationException("Author Name cannot exceed " + MAX_AUTHOR + " characters");
+        }
+    }
+
+    static void checkYear(int year) throws ValidationException {
+        int currentYear = currentYear();
+        if (year < 0 || year > currentYear) {
+            throw new ValidationException("Publication Year must be between 0 and " + currentYear);
+        }
+    }
+
+    static void checkISBN(String isbn) throws ValidationException {
+        if (isbn == null) {
+            throw new ValidationException("ISBN cannot be empty");
+        }
+        if (isbn.length() > MAX_ISBN) {
+            throw new ValidationException("ISBN cannot exceed 13 characters (excluding the '-')");
+        }
+    }
+
+    // Whether the value fits a save file record (see CatalogFile), without encoding it unless it might not
+    static boolean fitsRecord(String value) {
+        return value.length() <= MAX_FIELD_BYTES / 3 || utf8Length(value) <= MAX_FIELD_BYTES;
+    }
+
+    static int utf8Length(String value) {
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    // Stricter rule for newly entered books: a value shaped like an ISBN-10 or ISBN-13 must have the right check
+    // digit. Shorter local ids ("1") are still accepted, and saved books are not re-checked on load.
+    static void checkNewISBN(String isbn) throws ValidationException {
+        checkISBN(isbn);
+        if (isbnShape(isbn) != 0 && !isValidISBN(isbn)) {
+            throw new ValidationException("ISBN " + isbn + " has an invalid check digit");
+        }
+    }
+
+    // Same as AUTHOR_PATTERN
+    static boolean isAuthorName(CharSequence value) {
+        return allowed(value, " .'-", false);
+    }
+
+    // Same as GENRE_PATTERN
+    static boolean isGenreName(CharSequence value) {
+        return allowed(value, " -", false);
+    }
+
+    // Same as SUBJECT_PATTERN
+    static boolean isSubjectName(CharSequence value) {
+        return allowed(value, " &/-", true);
+    }
+
+    // Whether the value is non-empty and every code point is a letter (\p{L}), an ASCII digit if allowed, or one
+    // of the extra characters
+    private static boolean allowed(CharSequence value, String extra, boolean digits) {
+        if (value.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); ) {
+            int c = Character.codePointAt(value, i);
+            if (!Character.isLetter(c) && !(digits && c >= '0' && c <= '9') && extra.indexOf(c) < 0) {
+                return false;
+            }
+            i += Character.charCount(c);
+        }
+        return true;
+    }
+
+    // Whether the value, ignoring '-' and ' ', is an ISBN-10 or ISBN-13 with a correct check digit
+    static boolean isValidISBN(CharSequence isbn) {
+        int shape = isbnShape(isbn);
+        if (shape == 0) {
+            return false;
+        }
+        int sum = 0;
+        int position = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            int digit = c == 'X' || c == 'x' ? 10 : c - '0';
+            sum += shape == 10 ? digit * (10 - position) : digit * (position % 2 == 0 ? 1 : 3);
+            position++;
+        }
+        return sum % (shape == 10 ? 11 : 10) == 0;
+    }
+
+    // ISBN-13 check digit for the first 12 digits of the value
+    static char isbn13CheckDigit(CharSequence digits) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+
+    // 10 or 13 if the value, ignoring '-' and ' ', is that many digits (an ISBN-10 may end in X), else 0
+    private static int isbnShape(CharSequence isbn) {
+        int count = 0;
+        boolean checkX = false;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            if (checkX) {
+                return 0;                                                  // X only as the last character
+            }
+            if (c == 'X' || c == 'x') {
+                checkX = true;
+            } else if (c < '0' || c > '9') {
+                return 0;
+            }
+            count++;
+        }
+        return count == 10 || (count == 13 && !checkX) ? count : 0;
+    }
+
+    private static final class YearBound {
+        final int year;
+        final long endMillis;                                              // Start of next year, local time
+
+        private YearBound(int year, long endMillis) {
+            this.year = year;
+            this.endMillis = endMillis;
+        }
+
+        static YearBound now() {
+            ZonedDateTime now = ZonedDateTime.now();
+            ZonedDateTime next = now.toLocalDate().withDayOfYear(1).plusYears(1).atStartOfDay(now.getZone());
+            return new YearBound(now.getYear(), next.toInstant().toEpochMilli());
+        }
+    }
+}
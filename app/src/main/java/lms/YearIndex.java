@@ -0,0 +1,90 @@
+package lms;
+
+import java.util.*;
+
+// Range index over publication years: a sorted tree of year -> id bitmap, so a year range is one sub-map walk
+// and its size is known before any id is read. Built on first use and kept current on add/remove.
+class YearIndex implements CatalogListener {
+    private final Catalog catalog;
+    private final TreeMap<Integer, IdBitmap> years = new TreeMap<>();
+    private boolean built;
+
+    public YearIndex(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public void bookAdded(int id, Book book) {
+        if (built) {
+            years.computeIfAbsent(book.getYear(), k -> new IdBitmap()).add(id);
+        }
+    }
+
+    @Override
+    public void bookRemoved(int id, Book book) {
+        if (!built) {
+            return;
+        }
+        IdBitmap ids = years.get(book.getYear());
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                years.remove(book.getYear());
+            }
+        }
+    }
+
+    // Refills the year bitmaps after the catalog renumbered its slots
+    @Override
+    public void slotsCompacted(int from) {
+        if (!built) {
+            return;
+        }
+        years.clear();
+        built = false;
+        ensureBuilt();
+    }
+
+    // Number of books published from one year to another, both inclusive
+    public int count(int from, int to) {
+        ensureBuilt();
+        int count = 0;
+        for (IdBitmap ids : range(from, to).values()) {
+            count += ids.size();
+        }
+        return count;
+    }
+
+    // Distinct years in the range, i.e. the bitmaps matching(from, to) has to combine
+    public int years(int from, int to) {
+        ensureBuilt();
+        return range(from, to).size();
+    }
+
+    // Ids of the books published from one year to another, both inclusive
+    public IdBitmap matching(int from, int to) {
+        ensureBuilt();
+        IdBitmap result = new IdBitmap();
+        for (IdBitmap ids : range(from, to).values()) {
+            result = result.or(ids);
+        }
+        return result;
+    }
+
+    void ensureBuilt() {
+        if (built) {
+            return;
+        }
+        int limit = catalog.slotCount();
+        for (int id = 0; id < limit; id++) {
+            if (catalog.isLive(id)) {
+                years.computeIfAbsent(catalog.year(id), k -> new IdBitmap()).add(id);   // Only the year is read
+            }
+        }
+        built = true;
+    }
+
+    private SortedMap<Integer, IdBitmap> range(int from, int to) {
+        return from > to ? Collections.emptySortedMap() : years.subMap(from, true, to, true);
+    }
+}
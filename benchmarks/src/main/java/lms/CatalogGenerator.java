@@ -0,0 +1,55 @@
+package lms;
+
+import java.util.Random;
+
+// Deterministic synthetic catalogs mixing Book, FictionBook and Textbook records
+final class CatalogGenerator {
+    private static final String[] WORDS = {"Dark", "Star", "Legion", "Iron", "Blood", "Night", "Empire", "Fall",
+        "Rise", "War", "Peace", "King", "Shadow", "Crown", "Storm", "Horus", "Gods", "Fire", "Ocean", "Code"};
+    private static final String[] AUTHORS = {"Abnett", "McNeil", "Kyne", "Ingoglia", "Counter", "Swallow",
+        "Thorpe", "French", "Wraight", "Haley", "Annandale", "Dembski-Bowden", "O'Brien", "Le Guin", "Pratchett"};
+    private static final String[] GENRES = {"Sci-Fi", "Fantasy", "Horror", "Mystery", "Romance", "Thriller"};
+    private static final String[] SUBJECTS = {"Computer Science", "Mathematics", "Physics", "History", "Biology"};
+
+    private CatalogGenerator() {
+    }
+
+    // Catalog of the given size; the same seed always yields the same books
+    static Catalog catalog(int size, long seed) {
+        return catalog(size, seed, false);
+    }
+
+    static Catalog catalog(int size, long seed, boolean columnar) {
+        Catalog catalog = new Catalog(null, columnar);
+        catalog.ensureCapacity(size);
+        Random random = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            try {
+                catalog.add(book(random, i));
+            } catch (ValidationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return catalog;
+    }
+
+    // The i-th generated book, with a unique ISBN-13 derived from i
+    static Book book(Random random, int i) throws ValidationException {
+        String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(100000);
+        String author = AUTHORS[random.nextInt(AUTHORS.length)] + " " + (char) ('A' + random.nextInt(26)) + ".";
+        int year = 1900 + random.nextInt(125);
+        String isbn = isbn(i);
+        switch (i % 3) {
+            case 0:
+                return new FictionBook(title, author, year, isbn, GENRES[random.nextInt(GENRES.length)]);
+            case 1:
+                return new Textbook(title, author, year, isbn, SUBJECTS[random.nextInt(SUBJECTS.length)]);
+            default:
+                return new Book(title, author, year, isbn);
+        }
+    }
+
+    static String isbn(int i) {
+        return String.format("978%010d", i);
+    }
+}
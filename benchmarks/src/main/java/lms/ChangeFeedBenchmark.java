@@ -0,0 +1,79 @@
+package lms;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Cost of publishing changes: a book removed and added back with no feed, with an in-process subscriber
+// draining the ring on another thread, and with the feed file being written (batched) as well
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class ChangeFeedBenchmark {
+    @Param({"100000"})
+    public int size;
+
+    @Param({"none", "ring", "file"})
+    public String feed;
+
+    private Catalog catalog;
+    private ChangeFeed changes;
+    private Thread consumer;
+    private Path dir;
+    private final Random random = new Random(7);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catalog = CatalogGenerator.catalog(size, 42);
+        if (feed.equals("ring")) {
+            changes = new ChangeFeed(1 << 16, 100, TimeUnit.MILLISECONDS);
+            catalog.addListener(changes);
+            ChangeFeed.Subscription subscription = changes.subscribe(0);
+            consumer = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        subscription.poll(4096, 1, TimeUnit.SECONDS);
+                    }
+                } catch (InterruptedException | ChangeFeed.LappedException e) {
+                    // Done
+                }
+            });
+            consumer.setDaemon(true);
+            consumer.start();
+        } else if (feed.equals("file")) {
+            dir = Files.createTempDirectory("lms-bench");
+            changes = ChangeFeed.open(dir.resolve("Books.dat"), catalog, 1 << 16, 100, TimeUnit.MILLISECONDS, 64L << 20);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (consumer != null) {
+            consumer.interrupt();
+        }
+        if (dir != null) {
+            changes.close();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Benchmark
+    public Book removeAndAdd() throws ValidationException {
+        Book book = catalog.remove(CatalogGenerator.isbn(random.nextInt(size)));
+        catalog.add(book);
+        return book;
+    }
+}
@@ -0,0 +1,48 @@
+package lms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// filterBooks criteria: facet bitmap lookup against calling matchesFilter on every book
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class FilterBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"Fiction", "Non-Fiction", "Textbooks", "Sci-Fi", "Mathematics"})
+    public String criteria;
+
+    private Catalog catalog;
+    private List<Book> all;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = CatalogGenerator.catalog(size, 42);
+        all = catalog.view();
+        catalog.filter(criteria, all);                                     // Build the lazy index outside the measurement
+    }
+
+    @Benchmark
+    public List<Book> facetFilter() {
+        return catalog.filter(criteria, all);
+    }
+
+    @Benchmark
+    public List<Book> matchesFilterScan() {
+        List<Book> filtered = new ArrayList<>();
+        for (Book book : all) {
+            if (book.matchesFilter(criteria)) {
+                filtered.add(book);
+            }
+        }
+        return filtered;
+    }
+}
@@ -0,0 +1,31 @@
+package lms;
+
+// Heap retained per book by a generated catalog, as objects and in the columnar layout (indexes not built).
+//   java -cp benchmarks/target/benchmarks.jar lms.HeapFootprint [catalogSize]
+public class HeapFootprint {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        double objects = bytesPerBook(size, false);
+        double columnar = bytesPerBook(size, true);
+        System.out.printf("%d books: objects %.1f bytes/book, columnar %.1f bytes/book (%.1fx smaller)%n",
+                size, objects, columnar, objects / columnar);
+    }
+
+    private static double bytesPerBook(int size, boolean columnar) {
+        long before = usedHeap();
+        Catalog catalog = CatalogGenerator.catalog(size, 42, columnar);
+        long after = usedHeap();
+        if (catalog.size() != size) {                                      // Keeps the catalog reachable until measured
+            throw new IllegalStateException();
+        }
+        return (after - before) / (double) size;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,69 @@
+package lms;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// saveLibrary after a given number of changes (each a removed book added back, in a random slot range) against
+// writing the whole save file. Only the segments holding changed slots are rewritten, plus the manifest.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class IncrementalSaveBenchmark {
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"1", "100", "10000"})
+    public int changes;
+
+    private Catalog catalog;
+    private Path dir;
+    private SegmentedSave store;
+    private final Random random = new Random(7);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catalog = CatalogGenerator.catalog(size, 42);
+        dir = Files.createTempDirectory("lms-bench");
+        store = SegmentedSave.open(dir.resolve("Books.dat"), true);
+        store.track(catalog);
+        store.write(store.changes(catalog.snapshot()));
+    }
+
+    @Setup(Level.Invocation)
+    public void change() throws ValidationException {
+        for (int i = 0; i < changes; i++) {
+            String isbn = CatalogGenerator.isbn(random.nextInt(size));
+            catalog.add(catalog.remove(isbn));                             // Tombstones the old slot, appends a new one
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public int saveChanges() throws IOException {
+        return store.write(store.changes(catalog.snapshot()));
+    }
+
+    @Benchmark
+    public int saveAll() throws IOException {
+        store.changes(catalog.snapshot());                                 // Keeps the dirty marks from piling up
+        return CatalogFile.write(catalog, dir.resolve("Export.dat"));
+    }
+}
@@ -0,0 +1,81 @@
+package lms;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// exportFile/importFile paths: streamed binary save and load, plain and in compressed blocks, and opening the
+// mapped backend
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class PersistenceBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    private Catalog catalog;
+    private Path dir;
+    private Path saved;
+    private Path compressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        catalog = CatalogGenerator.catalog(size, 42);
+        dir = Files.createTempDirectory("lms-bench");
+        saved = dir.resolve("Books.dat");
+        CatalogFile.write(catalog, saved);
+        compressed = dir.resolve("Compressed.dat");
+        CatalogFile.writeCompressed(catalog, compressed);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(dir.resolve("Export.dat"));
+        Files.deleteIfExists(saved);
+        Files.deleteIfExists(compressed);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public int exportFile() throws IOException {
+        return CatalogFile.write(catalog, dir.resolve("Export.dat"));
+    }
+
+    @Benchmark
+    public int exportCompressed() throws IOException {
+        return CatalogFile.writeCompressed(catalog, dir.resolve("Export.dat"));
+    }
+
+    @Benchmark
+    public Catalog importFile() throws IOException, ValidationException {
+        return load(saved);
+    }
+
+    @Benchmark
+    public Catalog importCompressed() throws IOException, ValidationException {
+        return load(compressed);
+    }
+
+    private static Catalog load(Path file) throws IOException, ValidationException {
+        Catalog loaded = new Catalog();
+        try (CatalogFile.Reader in = CatalogFile.open(file)) {
+            loaded.ensureCapacity(in.count());
+            Book book;
+            while ((book = in.next()) != null) {
+                loaded.add(book);
+            }
+        }
+        return loaded;
+    }
+
+    @Benchmark
+    public Catalog mapFile() throws IOException {
+        return new Catalog(MappedCatalog.open(saved));
+    }
+}
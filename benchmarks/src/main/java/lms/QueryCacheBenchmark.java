@@ -0,0 +1,47 @@
+package lms;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// A repeated search + filter + sort, answered from the result cache or computed again every time
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class QueryCacheBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"dark", "hrous", ""})
+    public String term;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private Catalog catalog;
+    private Query query;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = CatalogGenerator.catalog(size, 42);
+        catalog.buildIndexes();
+        query = Query.of(term, "Fiction", SortOrder.TITLE);
+        catalog.query(query);
+    }
+
+    @Benchmark
+    public int query() {
+        List<Book> list;
+        if (cached) {
+            list = catalog.query(query);
+        } else {
+            list = term.isEmpty() ? catalog.view() : catalog.search(term);
+            list = catalog.sorted(query.order, catalog.filter("Fiction", list));
+        }
+        return list.size();
+    }
+}
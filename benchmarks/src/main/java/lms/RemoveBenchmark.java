@@ -0,0 +1,42 @@
+package lms;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// removeBook through the ISBN index; each removed book is added back so the catalog size stays fixed.
+// With indexed=true the search, sort and facet indexes are built first, so their upkeep is included.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class RemoveBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private Catalog catalog;
+    private final Random random = new Random(7);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = CatalogGenerator.catalog(size, 42);
+        if (indexed) {
+            catalog.search("horus");
+            catalog.sorted(SortOrder.TITLE, catalog.view());
+            catalog.filter("Fiction", catalog.view());
+        }
+    }
+
+    @Benchmark
+    public Book removeBook() throws ValidationException {
+        Book book = catalog.remove(CatalogGenerator.isbn(random.nextInt(size)));
+        catalog.add(book);
+        return book;
+    }
+}
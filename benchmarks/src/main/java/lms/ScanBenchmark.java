@@ -0,0 +1,67 @@
+package lms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Scaling of the remaining full scans with worker count. Each call runs inside a ForkJoinPool of the given
+// parallelism, which ParallelScan's streams then use; threads=1 is the sequential baseline.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class ScanBenchmark {
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Catalog catalog;
+    private List<Book> unindexed;                                          // Plain list, filtered by matchesFilter
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = CatalogGenerator.catalog(size, 42);
+        catalog.buildIndexes();
+        unindexed = new ArrayList<>(catalog.view());
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    // Single-letter term: nearly every book is a candidate that has to be verified and scored
+    @Benchmark
+    public List<Book> broadSearch() {
+        return inPool(() -> catalog.search("e"));
+    }
+
+    @Benchmark
+    public List<Book> fullView() {
+        return inPool(() -> catalog.view());
+    }
+
+    @Benchmark
+    public List<Book> predicateFilter() {
+        return inPool(() -> catalog.filter("Sci-Fi", unindexed));
+    }
+
+    @Benchmark
+    public List<Book> facetFilter() {
+        return inPool(() -> catalog.filter("Fiction", catalog.view()));
+    }
+
+    private List<Book> inPool(Callable<List<Book>> query) {
+        return pool.submit(query).join();
+    }
+}
@@ -0,0 +1,49 @@
+package lms;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Indexed title/author search (what SystemManager.search runs) against a plain substring scan
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class SearchBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"horus", "dark star", "abnett", "ea", "hrous", "dakr star"})   // The last two only match with typo tolerance
+    public String term;
+
+    private Catalog catalog;
+    private List<Book> all;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = CatalogGenerator.catalog(size, 42);
+        all = catalog.view();
+        catalog.search(term);                                              // Build the lazy index outside the measurement
+    }
+
+    @Benchmark
+    public List<Book> indexedSearch() {
+        return catalog.search(term);
+    }
+
+    // Baseline: what the old per-book toLowerCase().contains() walk cost
+    @Benchmark
+    public int substringScan() {
+        String needle = term.toLowerCase();
+        int hits = 0;
+        for (Book book : all) {
+            if (book.getTitle().toLowerCase().contains(needle) || book.getAuthor().toLowerCase().contains(needle)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
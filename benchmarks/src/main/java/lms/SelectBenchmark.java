@@ -0,0 +1,48 @@
+package lms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Catalog.select with the planner's chosen access path against checking the expression on every book
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class SelectBenchmark {
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"isbn:9780000000042", "genre:sci-fi year:2000..2010", "author:abnett year<1950", "title:horus genre:fantasy"})
+    public String where;
+
+    private Catalog catalog;
+    private Expression expression;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ValidationException {
+        catalog = CatalogGenerator.catalog(size, 42);
+        expression = Expression.parse(where);
+        catalog.select(expression);                                        // Build the lazy indexes outside the measurement
+    }
+
+    @Benchmark
+    public List<Book> plannedSelect() {
+        return catalog.select(expression);
+    }
+
+    @Benchmark
+    public List<Book> scan() {
+        List<Book> selected = new ArrayList<>();
+        for (Book book : catalog.view()) {
+            if (expression.matches(book)) {
+                selected.add(book);
+            }
+        }
+        return selected;
+    }
+}
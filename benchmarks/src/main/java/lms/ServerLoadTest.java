@@ -0,0 +1,103 @@
+package lms;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Drives many concurrent sessions against an in-process CatalogServer and reports throughput and latency.
+//   java -cp benchmarks/target/benchmarks.jar lms.ServerLoadTest [sessions] [requestsPerSession] [catalogSize]
+// Each session issues its requests back to back: mostly searches and filtered/sorted listings, plus
+// lookups and add/remove pairs on books of its own.
+public class ServerLoadTest {
+    private static final String[] TERMS = {"horus", "dark star", "legion", "abnett", "ea", "night", "fire 12"};
+    private static final String[] FILTERS = {"Fiction", "Non-Fiction", "Textbooks", "Sci-Fi", "Mathematics"};
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 25;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        CatalogServer server = CatalogServer.start(new SharedCatalog(CatalogGenerator.catalog(size, 42)), null, 0);
+        String base = "http://127.0.0.1:" + server.port() + "/books";
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        long[] latencies = new long[sessions * requests];
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicReference<String> firstFailure = new AtomicReference<>();
+
+        System.out.printf("%d sessions x %d requests against %d books%n", sessions, requests, size);
+        long start = System.nanoTime();
+        CompletableFuture<?>[] running = new CompletableFuture<?>[sessions];
+        for (int s = 0; s < sessions; s++) {
+            running[s] = session(client, base, s, requests, size, latencies, completed, failures, firstFailure);
+        }
+        CompletableFuture.allOf(running).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        server.stop();
+
+        int n = completed.get();
+        Arrays.sort(latencies, 0, n);
+        System.out.printf("%d requests in %.2f s: %.0f req/s, %d failed%n", n, seconds, n / seconds, failures.get());
+        if (firstFailure.get() != null) {
+            System.out.println("first failure: " + firstFailure.get());
+        }
+        System.out.printf("latency ms  p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n",
+                latencies[n / 2] / 1e6, latencies[(int) (n * 0.9)] / 1e6, latencies[(int) (n * 0.99)] / 1e6, latencies[n - 1] / 1e6);
+    }
+
+    // Chains one session's requests so each starts when the previous response arrives
+    private static CompletableFuture<Void> session(HttpClient client, String base, int session, int requests, int size,
+            long[] latencies, AtomicInteger completed, AtomicInteger failures, AtomicReference<String> firstFailure) {
+        Random random = new Random(session);
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (int r = 0; r < requests; r++) {
+            HttpRequest request = request(base, random, session, r, size);
+            chain = chain.thenCompose(ignored -> {
+                long sent = System.nanoTime();
+                return client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).handle((response, error) -> {
+                    latencies[completed.getAndIncrement()] = System.nanoTime() - sent;
+                    if (error != null || response.statusCode() >= 400) {
+                        failures.incrementAndGet();
+                        firstFailure.compareAndSet(null, error != null ? error.toString() : request.method() + " " + request.uri() + " -> " + response.statusCode());
+                    }
+                    return null;
+                });
+            });
+        }
+        return chain;
+    }
+
+    private static HttpRequest request(String base, Random random, int session, int r, int size) {
+        String digits = String.format("979%09d", session * 1000L + r / 10);  // Outside the generated ISBN range
+        String own = digits + Validation.isbn13CheckDigit(digits);
+        int pick = random.nextInt(10);
+        if (r % 10 == 8) {
+            String body = "{\"title\":\"Load " + session + "\",\"author\":\"Tester\",\"year\":2020,\"isbn\":\"" + own + "\"}";
+            return HttpRequest.newBuilder(URI.create(base)).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        } else if (r % 10 == 9) {
+            return HttpRequest.newBuilder(URI.create(base + "/" + own)).DELETE().build();
+        } else if (pick < 5) {
+            return get(base + "?q=" + encode(TERMS[random.nextInt(TERMS.length)]));
+        } else if (pick < 8) {
+            return get(base + "?filter=" + encode(FILTERS[random.nextInt(FILTERS.length)]) + "&sort="
+                    + SortOrder.values()[random.nextInt(SortOrder.values().length)].name() + "&offset=" + random.nextInt(100));
+        }
+        return get(base + "/" + CatalogGenerator.isbn(random.nextInt(size)));
+    }
+
+    private static HttpRequest get(String uri) {
+        return HttpRequest.newBuilder(URI.create(uri)).GET().build();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,46 @@
+package lms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// sortBooks orders: walking the sorted secondary index against a full comparator sort
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class SortBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"TITLE", "AUTHOR", "YEAR", "ISBN"})
+    public String orderName;                                               // JMH-generated code can't see the package-private enum
+
+    private SortOrder order;
+    private Catalog catalog;
+    private List<Book> all;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        order = SortOrder.valueOf(orderName);
+        catalog = CatalogGenerator.catalog(size, 42);
+        all = catalog.view();
+        catalog.sorted(order, all);                                        // Build the lazy index outside the measurement
+    }
+
+    @Benchmark
+    public List<Book> sortedIndex() {
+        return catalog.sorted(order, all);
+    }
+
+    @Benchmark
+    public List<Book> comparatorSort() {
+        List<Book> copy = new ArrayList<>(all);
+        copy.sort(order.getComparator());
+        return copy;
+    }
+}
@@ -0,0 +1,34 @@
+package lms;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// One type-ahead request per keystroke: completions of the last word typed so far, with typo tolerance
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class TypeAheadBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"h", "hor", "dark st", "abn", "hrous", "mathmat"})
+    public String typed;
+
+    private Catalog catalog;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = CatalogGenerator.catalog(size, 42);
+        catalog.suggest(typed, 10);                                        // Build the lazy index outside the measurement
+    }
+
+    @Benchmark
+    public List<String> suggest() {
+        return catalog.suggest(typed, 10);
+    }
+}
@@ -0,0 +1,39 @@
+package lms;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Per-record validation cost in a bulk load: the name rules as String.matches against the hand-written checks,
+// and a whole Book constructed through its validating setters. Run with -prof gc to see the allocation rates.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+    public String author = "Dan Abnett";
+    public String genre = "Sci-Fi";
+    public String isbn = "978-1844167401";
+
+    @Benchmark
+    public boolean namesRegex() {
+        return author.matches(Validation.AUTHOR_PATTERN) & genre.matches(Validation.GENRE_PATTERN);
+    }
+
+    @Benchmark
+    public boolean namesChecked() {
+        return Validation.isAuthorName(author) & Validation.isGenreName(genre);
+    }
+
+    @Benchmark
+    public boolean isbnChecksum() {
+        return Validation.isValidISBN(isbn);
+    }
+
+    @Benchmark
+    public Book newBook() throws ValidationException {
+        return new FictionBook("Horus Rising", author, 2006, isbn, genre);
+    }
+}